@@ -20,7 +20,8 @@
 package org.edgexfoundry.controller;
 
 import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.edgexfoundry.handler.CommandHandler;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,6 +30,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 @RestController
 @RequestMapping("/api/v1/device")
@@ -38,27 +40,28 @@ public class CommandController {
 	private CommandHandler command;
 	
 	@RequestMapping(value = "/{deviceId}/{cmd}", method = { RequestMethod.PUT, RequestMethod.POST, RequestMethod.GET })
-	public Callable<Map<String,String>> getCommand(@PathVariable String deviceId, @PathVariable String cmd,
+	public DeferredResult<Map<String,String>> getCommand(@PathVariable String deviceId, @PathVariable String cmd,
 			@RequestBody(required=false) String arguments) {
-		Callable<Map<String,String>> callable = new Callable<Map<String,String>>() {
-			@Override
-			public Map<String,String> call() throws Exception {
-				return command.getResponse(deviceId, cmd, arguments);
-			}
-		};
-		return callable;
+		return defer(command.getResponse(deviceId, cmd, arguments));
 	}
 	
 	@RequestMapping(value = "/all/{cmd}", method = { RequestMethod.PUT, RequestMethod.POST, RequestMethod.GET })
-	public Callable<Map<String,String>> getCommands(@PathVariable String cmd,
+	public DeferredResult<Map<String,String>> getCommands(@PathVariable String cmd,
 			@RequestBody(required=false) String arguments) {
-		Callable<Map<String,String>> callable = new Callable<Map<String,String>>() {
-			@Override
-			public Map<String,String> call() throws Exception {
-				return command.getResponses(cmd, arguments);
+		return defer(command.getResponses(cmd, arguments));
+	}
+
+	// answer the request when the command completes, without holding a thread
+	private DeferredResult<Map<String,String>> defer(CompletableFuture<Map<String,String>> future) {
+		DeferredResult<Map<String,String>> result = new DeferredResult<Map<String,String>>();
+		future.whenComplete((responses, e) -> {
+			if (e == null) {
+				result.setResult(responses);
+			} else {
+				result.setErrorResult(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
 			}
-		};
-		return callable;
+		});
+		return result;
 	}
 	
 }
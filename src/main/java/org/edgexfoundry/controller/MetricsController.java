@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.controller;
+
+import java.util.Map;
+
+import org.edgexfoundry.handler.CommandFanOut;
+import org.edgexfoundry.handler.CoreDataPublisher;
+import org.edgexfoundry.handler.DeviceLanes;
+import org.edgexfoundry.handler.DeviceStatusUpdater;
+import org.edgexfoundry.handler.EventSpool;
+import org.edgexfoundry.handler.ModbusHandler;
+import org.edgexfoundry.handler.OperationDispatcher;
+import org.edgexfoundry.handler.PublishFilter;
+import org.edgexfoundry.handler.RetryPolicies;
+import org.edgexfoundry.handler.WindowAggregator;
+import org.edgexfoundry.modbus.AdaptiveTimeouts;
+import org.edgexfoundry.modbus.DeviceCircuitBreaker;
+import org.edgexfoundry.modbus.ModbusConnectionPool;
+import org.edgexfoundry.modbus.ModbusNioEngine;
+import org.edgexfoundry.modbus.ModbusPipelineManager;
+import org.edgexfoundry.modbus.SerialBusManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/metrics")
+public class MetricsController {
+
+	@Autowired
+	private ModbusConnectionPool connectionPool;
+
+	@Autowired
+	private ModbusPipelineManager pipelines;
+
+	@Autowired
+	private ModbusNioEngine nioEngine;
+
+	@Autowired
+	private SerialBusManager serialBuses;
+
+	@Autowired
+	private OperationDispatcher dispatcher;
+
+	@Autowired
+	private CommandFanOut fanOut;
+
+	@Autowired
+	private DeviceLanes lanes;
+
+	@Autowired
+	private DeviceCircuitBreaker breakers;
+
+	@Autowired
+	private AdaptiveTimeouts timeouts;
+
+	@Autowired
+	private RetryPolicies retries;
+
+	@Autowired
+	private ModbusHandler handler;
+
+	@Autowired
+	private CoreDataPublisher publisher;
+
+	@Autowired
+	private EventSpool spool;
+
+	@Autowired
+	private DeviceStatusUpdater statusUpdater;
+
+	@Autowired
+	private PublishFilter publishFilter;
+
+	@Autowired
+	private WindowAggregator aggregator;
+
+	@RequestMapping(path = "/pool", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getPoolStatistics() {
+		return connectionPool.getStatistics();
+	}
+
+	@RequestMapping(path = "/pipeline", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getPipelineStatistics() {
+		return pipelines.getStatistics();
+	}
+
+	@RequestMapping(path = "/nio", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getNioStatistics() {
+		return nioEngine.getStatistics();
+	}
+
+	@RequestMapping(path = "/serial", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getSerialStatistics() {
+		return serialBuses.getStatistics();
+	}
+
+	@RequestMapping(path = "/dispatch", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getDispatchStatistics() {
+		return dispatcher.getStatistics();
+	}
+
+	@RequestMapping(path = "/fanout", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getFanOutStatistics() {
+		return fanOut.getStatistics();
+	}
+
+	@RequestMapping(path = "/devices", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getDeviceStatistics() {
+		return lanes.getStatistics();
+	}
+
+	@RequestMapping(path = "/breakers", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getBreakerStatistics() {
+		return breakers.getStatistics();
+	}
+
+	@RequestMapping(path = "/timeouts", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getTimeoutEstimates() {
+		return timeouts.getEstimates();
+	}
+
+	@RequestMapping(path = "/retries", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getRetryStatistics() {
+		return retries.getStatistics();
+	}
+
+	@RequestMapping(path = "/reads", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getReadStatistics() {
+		return handler.getReadStatistics();
+	}
+
+	@RequestMapping(path = "/publisher", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getPublisherStatistics() {
+		return publisher.getStatistics();
+	}
+
+	@RequestMapping(path = "/spool", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getSpoolStatistics() {
+		return spool.getStatistics();
+	}
+
+	@RequestMapping(path = "/status", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getStatusStatistics() {
+		return statusUpdater.getStatistics();
+	}
+
+	@RequestMapping(path = "/filter", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getFilterStatistics() {
+		return publishFilter.getStatistics();
+	}
+
+	@RequestMapping(path = "/aggregates", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getAggregateStatistics() {
+		return aggregator.getStatistics();
+	}
+}
@@ -19,8 +19,11 @@
  *******************************************************************************/
 package org.edgexfoundry.controller;
 
+import java.util.Map;
+
 import org.edgexfoundry.data.ObjectStore;
 import org.edgexfoundry.handler.ModbusHandler;
+import org.edgexfoundry.modbus.IllegalRangeCache;
 import org.edgexfoundry.support.logging.client.EdgeXLogger;
 import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,6 +45,9 @@ public class ServiceController {
 	@Autowired
 	ModbusHandler handler;
 
+	@Autowired
+	IllegalRangeCache illegalRanges;
+
 	@RequestMapping(path = "/debug/transformData/{transformData}", method = RequestMethod.GET)
 	public @ResponseBody String setTransformData(@PathVariable Boolean transformData) {
 		logger.info("Setting transform data to: " + transformData);
@@ -55,4 +61,17 @@ public class ServiceController {
 		handler.scan();
 		return "Running discovery";
 	}
+
+	// address ranges devices refused as illegal and no longer requested
+	@RequestMapping(path = "/debug/illegalRanges", method = RequestMethod.GET)
+	public @ResponseBody Map<String, Object> getIllegalRanges() {
+		return illegalRanges.getDiagnostics();
+	}
+
+	@RequestMapping(path = "/debug/illegalRanges/{deviceName}", method = RequestMethod.DELETE)
+	public @ResponseBody String clearIllegalRanges(@PathVariable String deviceName) {
+		logger.info("Clearing illegal ranges of " + deviceName);
+		illegalRanges.remove(deviceName);
+		return "Cleared illegal ranges of " + deviceName;
+	}
 }
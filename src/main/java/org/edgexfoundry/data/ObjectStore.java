@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.edgexfoundry.domain.ModbusObject;
+import org.edgexfoundry.domain.ReadingValue;
 import org.edgexfoundry.domain.core.Reading;
 import org.edgexfoundry.domain.meta.Device;
 import org.edgexfoundry.domain.meta.ResourceOperation;
@@ -60,7 +61,7 @@ public class ObjectStore {
 	@Value("${data.cache.size:1}")
 	private int CACHE_SIZE;
 
-	private Map<String, Map<String, List<String>>> objectCache = new HashMap<>();
+	private Map<String, Map<String, List<ReadingValue>>> objectCache = new HashMap<>();
 
 	private Map<String, Map<String, List<Reading>>> responseCache = new LinkedHashMap<>();
 
@@ -72,18 +73,18 @@ public class ObjectStore {
 		transformData = transform;
 	}
 
-	public void putReadings(Device device, ResourceOperation operation, String value) {
-		if (value == null || value.equals("") || value.equals("{}"))
+	public void putReadings(Device device, ResourceOperation operation, ReadingValue value) {
+		if (value == null || value.isEmpty())
 			return;
 
 		List<ModbusObject> objectsList = createObjectsList(operation, device);
-		Map<String, String> values = new LinkedHashMap<>();
+		Map<String, ReadingValue> values = new LinkedHashMap<>();
 		objectsList.stream().map(ModbusObject::getName).forEach(n -> values.put(n, value));
 
 		executePutReadings(device, operation, values, objectsList);
 	}
 
-	public void putReadings(Device device, ResourceOperation operation, Map<String, String> values) {
+	public void putReadings(Device device, ResourceOperation operation, Map<String, ReadingValue> values) {
 		if (values == null || values.isEmpty())
 			return;
 
@@ -92,7 +93,7 @@ public class ObjectStore {
 		executePutReadings(device, operation, values, objectsList);
 	}
 
-	private void executePutReadings(Device device, ResourceOperation operation, Map<String, String> values,
+	private void executePutReadings(Device device, ResourceOperation operation, Map<String, ReadingValue> values,
 			List<ModbusObject> objectsList) {
 		String deviceId = device.getId();
 		List<Reading> readings = new ArrayList<>();
@@ -100,7 +101,7 @@ public class ObjectStore {
 		for (ModbusObject obj : objectsList) {
 			String objectName = obj.getName();
 			logger.info("Before transformation result:" + values);
-			String result = transformResult(values.get(objectName), obj, device, operation);
+			ReadingValue result = transformResult(values.get(objectName), obj, device, operation);
 			logger.info("After transformation result:" + result);
 
 			Reading reading = processor.buildReading(objectName, result, device.getName());
@@ -108,9 +109,9 @@ public class ObjectStore {
 
 			synchronized (objectCache) {
 				if (objectCache.get(deviceId) == null)
-					objectCache.put(deviceId, new LinkedHashMap<String, List<String>>());
+					objectCache.put(deviceId, new LinkedHashMap<String, List<ReadingValue>>());
 				if (objectCache.get(deviceId).get(objectName) == null)
-					objectCache.get(deviceId).put(objectName, new ArrayList<String>());
+					objectCache.get(deviceId).put(objectName, new ArrayList<ReadingValue>());
 				objectCache.get(deviceId).get(objectName).add(0, result);
 				if (objectCache.get(deviceId).get(objectName).size() == CACHE_SIZE)
 					objectCache.get(deviceId).get(objectName).remove(CACHE_SIZE - 1);
@@ -154,7 +155,7 @@ public class ObjectStore {
 		return objectsList;
 	}
 	
-	private List<ModbusObject> createObjectsList(Map<String, String> values, Device device) {
+	private List<ModbusObject> createObjectsList(Map<String, ReadingValue> values, Device device) {
 		Map<String, ModbusObject> objects = profiles.getObjects().get(device.getName());
 		List<ModbusObject> objectsList = new ArrayList<ModbusObject>();
 		if (values != null && !values.isEmpty() && objects != null) {
@@ -163,15 +164,16 @@ public class ObjectStore {
 		return objectsList;
 	}
 
-	private String transformResult(String result, ModbusObject object, Device device, ResourceOperation operation) {
+	private ReadingValue transformResult(ReadingValue result, ModbusObject object, Device device,
+			ResourceOperation operation) {
 		return objectTransform.transformGetResult(result, object, device, operation);
 	}
 
 	public String get(String deviceId, String object) {
-		return get(deviceId, object, 1).get(0);
+		return get(deviceId, object, 1).get(0).toString();
 	}
 
-	private List<String> get(String deviceId, String object, int i) {
+	private List<ReadingValue> get(String deviceId, String object, int i) {
 		if (objectCache.get(deviceId) == null || objectCache.get(deviceId).get(object) == null
 				|| objectCache.get(deviceId).get(object).size() < i)
 			return null;
@@ -199,4 +201,23 @@ public class ObjectStore {
 		return responseCache.get(deviceId).get(operationId);
 	}
 
+	// the last readings of the operation if every one of them was taken within
+	// maxAge milliseconds, otherwise null
+	public List<Reading> getResponses(Device device, ResourceOperation operation, long maxAge) {
+		List<Reading> readings;
+		synchronized (responseCache) {
+			readings = getResponses(device, operation);
+		}
+		if (readings.isEmpty()) {
+			return null;
+		}
+		long oldest = System.currentTimeMillis() - maxAge;
+		for (Reading reading : readings) {
+			if (reading.getOrigin() < oldest) {
+				return null;
+			}
+		}
+		return readings;
+	}
+
 }
@@ -21,13 +21,21 @@ package org.edgexfoundry.data;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.edgexfoundry.controller.DeviceProfileClient;
 import org.edgexfoundry.controller.ValueDescriptorClient;
+import org.edgexfoundry.domain.ModbusCommandPlan;
+import org.edgexfoundry.domain.ModbusDevice;
 import org.edgexfoundry.domain.ModbusObject;
+import org.edgexfoundry.domain.ModbusOperationPlan;
+import org.edgexfoundry.domain.ModbusResourcePlan;
 import org.edgexfoundry.domain.common.IoTType;
 import org.edgexfoundry.domain.common.ValueDescriptor;
 import org.edgexfoundry.domain.meta.Command;
@@ -38,6 +46,7 @@ import org.edgexfoundry.domain.meta.ProfileResource;
 import org.edgexfoundry.domain.meta.PropertyValue;
 import org.edgexfoundry.domain.meta.ResourceOperation;
 import org.edgexfoundry.domain.meta.Units;
+import org.edgexfoundry.modbus.TransformChain;
 import org.edgexfoundry.support.logging.client.EdgeXLogger;
 import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -73,12 +82,47 @@ public class ProfileStore {
 		return objects;
 	}
 
+	// map (key of device name) to the compiled plan of each device resource
+	private Map<String, Map<String, ModbusResourcePlan>> resourcePlans = new ConcurrentHashMap<>();
+
+	public Map<String, Map<String, ModbusResourcePlan>> getResourcePlans() {
+		return resourcePlans;
+	}
+
+	// map (key of device name) to the compiled plans of each command keyed by
+	// lower case command name and then by get or set
+	private Map<String, Map<String, Map<String, ModbusCommandPlan>>> commandPlans = new ConcurrentHashMap<>();
+
+	public ModbusCommandPlan getCommandPlan(String deviceName, String command, String method) {
+		Map<String, Map<String, ModbusCommandPlan>> devicePlans = commandPlans.get(deviceName);
+		if (devicePlans == null) {
+			return null;
+		}
+		Map<String, ModbusCommandPlan> methods = devicePlans.get(command.toLowerCase());
+		return methods == null ? null : methods.get(method);
+	}
+
+	// map (key of device name) to the compiled get transformation of each
+	// resource operation, keyed by the operation and then by the object read
+	private Map<String, Map<ResourceOperation, Map<ModbusObject, TransformChain>>> transformChains = new ConcurrentHashMap<>();
+
+	public TransformChain getTransformChain(String deviceName, ResourceOperation operation, ModbusObject object) {
+		Map<ResourceOperation, Map<ModbusObject, TransformChain>> deviceChains = transformChains.get(deviceName);
+		if (deviceChains == null || deviceChains.get(operation) == null) {
+			return null;
+		}
+		return deviceChains.get(operation).get(object);
+	}
+
 	public void updateDevice(Device device) {
 		removeDevice(device);
 		addDevice(device);
 	}
 
 	public void removeDevice(Device device) {
+		transformChains.remove(device.getName());
+		commandPlans.remove(device.getName());
+		resourcePlans.remove(device.getName());
 		objects.remove(device.getName());
 		commands.remove(device.getName());
 	}
@@ -163,6 +207,7 @@ public class ProfileStore {
 
 		objects.put(device.getName(), deviceObjects);
 		commands.put(device.getName(), deviceOperations);
+		compilePlans(device, deviceObjects, deviceOperations);
 
 		// Create a value descriptor for each parameter using its underlying
 		// object
@@ -185,6 +230,119 @@ public class ProfileStore {
 		}
 	}
 
+	private void compilePlans(Device device, Map<String, ModbusObject> deviceObjects,
+			Map<String, Map<String, List<ResourceOperation>>> deviceOperations) {
+		ModbusDevice modbusDevice = (device instanceof ModbusDevice) ? (ModbusDevice) device : new ModbusDevice(device);
+
+		Map<String, ModbusResourcePlan> devicePlans = new HashMap<>();
+		for (ModbusObject object : deviceObjects.values()) {
+			devicePlans.put(object.getName(), new ModbusResourcePlan(object, modbusDevice));
+		}
+		for (ModbusResourcePlan plan : devicePlans.values()) {
+			plan.resolveReferences(devicePlans);
+		}
+
+		Map<String, Map<String, ModbusCommandPlan>> deviceCommandPlans = new HashMap<>();
+		for (String command : deviceOperations.keySet()) {
+			Map<String, ModbusCommandPlan> methods = new HashMap<>();
+			for (String method : new String[] { "get", "set" }) {
+				List<ModbusOperationPlan> operations = new ArrayList<>();
+				if (compileOperations(command, method, deviceOperations, devicePlans, operations, new HashSet<>())) {
+					methods.put(method, new ModbusCommandPlan(command, method, operations));
+				}
+			}
+			deviceCommandPlans.put(command, methods);
+		}
+
+		Map<ResourceOperation, Map<ModbusObject, TransformChain>> deviceChains = new IdentityHashMap<>();
+		for (Map<String, List<ResourceOperation>> methods : deviceOperations.values()) {
+			for (List<ResourceOperation> operations : methods.values()) {
+				if (operations != null) {
+					for (ResourceOperation operation : operations) {
+						compileTransforms(operation, deviceObjects, deviceChains);
+					}
+				}
+			}
+		}
+
+		resourcePlans.put(device.getName(), devicePlans);
+		commandPlans.put(device.getName(), deviceCommandPlans);
+		transformChains.put(device.getName(), deviceChains);
+	}
+
+	// compile the transformation of every object a reading of the operation is
+	// stored for: the object itself, or the objects its block references, and
+	// the secondaries
+	private void compileTransforms(ResourceOperation operation, Map<String, ModbusObject> deviceObjects,
+			Map<ResourceOperation, Map<ModbusObject, TransformChain>> deviceChains) {
+		ModbusObject object = operation.getObject() != null ? deviceObjects.get(operation.getObject()) : null;
+		if (object == null || deviceChains.containsKey(operation)) {
+			return;
+		}
+
+		List<ModbusObject> readObjects = new ArrayList<>();
+		readObjects.add(object);
+		if (object.getAttributes().getDeviceResourceReferences() != null) {
+			for (String reference : object.getAttributes().getDeviceResourceReferences()) {
+				readObjects.add(deviceObjects.get(reference));
+			}
+		}
+		if (operation.getSecondary() != null) {
+			for (String secondary : operation.getSecondary()) {
+				readObjects.add(deviceObjects.get(secondary));
+			}
+		}
+
+		Map<ModbusObject, TransformChain> chains = new IdentityHashMap<>();
+		for (ModbusObject readObject : readObjects) {
+			if (readObject != null && readObject.getProperties() != null) {
+				TransformChain chain = TransformChain.compile(readObject, operation);
+				if (chain != null) {
+					chains.put(readObject, chain);
+				}
+			}
+		}
+		deviceChains.put(operation, chains);
+	}
+
+	// flatten the operations of a command the way ModbusHandler walks them; a
+	// command that cannot be resolved completely gets no plan and is executed
+	// by walking the profile, which reports the error
+	private boolean compileOperations(String command, String method,
+			Map<String, Map<String, List<ResourceOperation>>> deviceOperations,
+			Map<String, ModbusResourcePlan> devicePlans, List<ModbusOperationPlan> operations, Set<String> visiting) {
+		String key = command.toLowerCase() + ":" + method;
+		if (!visiting.add(key)) {
+			logger.error("Resource " + command + " references itself");
+			return false;
+		}
+
+		Map<String, List<ResourceOperation>> resource = deviceOperations.get(command.toLowerCase());
+		if (resource == null || resource.get(method) == null) {
+			return false;
+		}
+
+		for (ResourceOperation operation : resource.get(method)) {
+			if (operation.getResource() != null) {
+				String nestedMethod = operation.getOperation().equals("get") ? "get" : method;
+				if (!compileOperations(operation.getResource(), nestedMethod, deviceOperations, devicePlans,
+						operations, visiting)) {
+					return false;
+				}
+				continue;
+			}
+
+			ModbusResourcePlan plan = devicePlans.get(operation.getObject());
+			if (plan == null || !"value".equals(operation.getProperty())) {
+				return false;
+			}
+			operations.add(new ModbusOperationPlan(operation, plan, method.equals("set")));
+		}
+
+		visiting.remove(key);
+		return true;
+	}
+
 	private ValueDescriptor createDescriptor(String name, DeviceObject object, Device device) {
 		PropertyValue value = object.getProperties().getValue();
 		Units units = object.getProperties().getUnits();
@@ -42,6 +42,18 @@ public class ModbusAttribute implements Serializable {
 	private boolean isWordSwap = false;
 	private int length = 0;
 	private List<String> deviceResourceReferences = new ArrayList<>();
+
+	// publish policy, unset values fall back to the modbus.publish properties
+	private Double deadband;
+	private Double deadbandPercent;
+	private Boolean publishOnChange;
+	private Long minPublishInterval;
+	private Long maxPublishInterval;
+
+	// windowed aggregation, aggregateSlide defaults to the window (tumbling)
+	private Long aggregateWindow;
+	private Long aggregateSlide;
+	private List<String> aggregates;
 	
 	public ModbusAttribute(Object attributes) {
 		try {
@@ -55,6 +67,14 @@ public class ModbusAttribute implements Serializable {
 			this.setWordSwap(thisObject.isWordSwap());
 			this.setLength(thisObject.getLength());
 			this.setDeviceResourceReferences(thisObject.getDeviceResourceReferences());
+			this.setDeadband(thisObject.getDeadband());
+			this.setDeadbandPercent(thisObject.getDeadbandPercent());
+			this.setPublishOnChange(thisObject.getPublishOnChange());
+			this.setMinPublishInterval(thisObject.getMinPublishInterval());
+			this.setMaxPublishInterval(thisObject.getMaxPublishInterval());
+			this.setAggregateWindow(thisObject.getAggregateWindow());
+			this.setAggregateSlide(thisObject.getAggregateSlide());
+			this.setAggregates(thisObject.getAggregates());
 			
 		} catch (Exception e) {
 			logger.error("Cannot Construct ModbusAttribute: " + e.getMessage());
@@ -109,6 +129,70 @@ public class ModbusAttribute implements Serializable {
 		this.deviceResourceReferences = deviceResourceReferences;
 	}
 
+	public Double getDeadband() {
+		return deadband;
+	}
+
+	public void setDeadband(Double deadband) {
+		this.deadband = deadband;
+	}
+
+	public Double getDeadbandPercent() {
+		return deadbandPercent;
+	}
+
+	public void setDeadbandPercent(Double deadbandPercent) {
+		this.deadbandPercent = deadbandPercent;
+	}
+
+	public Boolean getPublishOnChange() {
+		return publishOnChange;
+	}
+
+	public void setPublishOnChange(Boolean publishOnChange) {
+		this.publishOnChange = publishOnChange;
+	}
+
+	public Long getMinPublishInterval() {
+		return minPublishInterval;
+	}
+
+	public void setMinPublishInterval(Long minPublishInterval) {
+		this.minPublishInterval = minPublishInterval;
+	}
+
+	public Long getMaxPublishInterval() {
+		return maxPublishInterval;
+	}
+
+	public void setMaxPublishInterval(Long maxPublishInterval) {
+		this.maxPublishInterval = maxPublishInterval;
+	}
+
+	public Long getAggregateWindow() {
+		return aggregateWindow;
+	}
+
+	public void setAggregateWindow(Long aggregateWindow) {
+		this.aggregateWindow = aggregateWindow;
+	}
+
+	public Long getAggregateSlide() {
+		return aggregateSlide;
+	}
+
+	public void setAggregateSlide(Long aggregateSlide) {
+		this.aggregateSlide = aggregateSlide;
+	}
+
+	public List<String> getAggregates() {
+		return aggregates;
+	}
+
+	public void setAggregates(List<String> aggregates) {
+		this.aggregates = aggregates;
+	}
+
 	@Override
 	public String toString() {
 		return "ModbusAttribute [primaryTable=" + primaryTable + ", startingAddress=" + startingAddress
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.domain;
+
+import java.math.BigInteger;
+
+import org.edgexfoundry.domain.meta.PropertyValue;
+
+// The LSB, word, mask, shift and signed settings of a property value compiled
+// into long arithmetic. It gives the same results as the BigInteger handling
+// in ObjectTransform for values of up to 15 hex digit words; anything the
+// primitive path cannot represent is left to ObjectTransform.
+public class ModbusBitField {
+
+	private static final int MAX_WORD_DIGITS = 15;
+
+	private boolean primitive;
+	private boolean masked;
+	private int size;
+	private int word;
+	private boolean lsb;
+	private long mask;
+	private int shift;
+	private boolean signed;
+
+	public ModbusBitField(PropertyValue value) {
+		try {
+			BigInteger valueMask = value.mask();
+			masked = !valueMask.equals(BigInteger.ZERO);
+			mask = valueMask.longValue();
+			size = value.size();
+			word = Math.min(value.word() * 2, size);
+			lsb = value.LSB();
+			shift = value.shift();
+			signed = Boolean.TRUE.equals(value.getSigned());
+			primitive = size > 0 && word > 0 && word <= MAX_WORD_DIGITS && shift >= 0;
+		} catch (Exception e) {
+			primitive = false;
+		}
+	}
+
+	// whether the primitive operations apply to this property value
+	public boolean isPrimitive() {
+		return primitive;
+	}
+
+	public boolean isMasked() {
+		return masked;
+	}
+
+	// whether a value extracted from text still fits a long
+	public boolean fitsLong(String text) {
+		return size <= MAX_WORD_DIGITS && (digitCount(text) / word) * word * 4 < Long.SIZE;
+	}
+
+	// the value of text ("0x" prefixed hex, or a number Integer.decode accepts)
+	// with its words reassembled in LSB or MSB order, truncated to 64 bits
+	public long parse(String text) {
+		boolean hex = text.startsWith("0x");
+		int decoded = hex ? 0 : Integer.decode(text);
+		int digits = hex ? text.length() - 2 : decodedDigits(decoded);
+
+		long value = 0;
+		for (int i = 0; i < digits / word; i++) {
+			int start = i * word;
+			int finish = (i + 1) * word;
+			long thisword = 0;
+
+			for (int j = 0; j < word / 2; j++) {
+				int index = lsb ? finish - j * 2 - 2 : start + j * 2;
+				int octet = hex ? hexDigit(text, 2 + index) << 4 | hexDigit(text, 3 + index)
+						: decodedDigit(decoded, digits, index) << 4 | decodedDigit(decoded, digits, index + 1);
+				thisword = octet + (thisword << 8);
+			}
+
+			value = thisword + (value << (word * 4));
+		}
+		return value;
+	}
+
+	// apply mask, shift and sign to a parsed value read from the device
+	public long extract(long value) {
+		if (masked) {
+			value &= mask;
+		}
+		if (shift != 0) {
+			value = shift < Long.SIZE ? value >>> shift : 0;
+		}
+		if (signed && Long.SIZE - Long.numberOfLeadingZeros(value) == size * 4) {
+			value -= (1L << (size * 4)) - 1;
+		}
+		return value;
+	}
+
+	// write value into the masked bits of the current parsed value
+	public int insert(long value, long current) {
+		long shifted = shift < Long.SIZE ? value << shift : 0;
+		return (int) ((current & ~mask) | shifted);
+	}
+
+	// format as zero padded upper case hex of at least size digits
+	public String format(int value) {
+		int digits = Math.max(size, hexDigits(value));
+		char[] chars = new char[digits];
+		for (int i = digits - 1; i >= 0; i--) {
+			chars[i] = Character.toUpperCase(Character.forDigit(value & 0xF, 16));
+			value >>>= 4;
+		}
+		return new String(chars);
+	}
+
+	private int digitCount(String text) {
+		return text.startsWith("0x") ? text.length() - 2 : decodedDigits(Integer.decode(text));
+	}
+
+	private int decodedDigits(int decoded) {
+		return Math.max(size, hexDigits(decoded));
+	}
+
+	// digit index of the decoded value printed as digits hex digits
+	private int decodedDigit(int decoded, int digits, int index) {
+		int fromRight = digits - 1 - index;
+		return fromRight >= 8 ? 0 : (decoded >>> (fromRight * 4)) & 0xF;
+	}
+
+	private static int hexDigit(String text, int index) {
+		int digit = Character.digit(text.charAt(index), 16);
+		if (digit < 0) {
+			throw new NumberFormatException("For input string: \"" + text + "\"");
+		}
+		return digit;
+	}
+
+	private static int hexDigits(int value) {
+		return value == 0 ? 1 : (Integer.SIZE - Integer.numberOfLeadingZeros(value) + 3) / 4;
+	}
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.domain;
+
+import java.util.Collections;
+import java.util.List;
+
+// The flattened operations of one (device, command, method), compiled when the
+// device is added to the ProfileStore and dropped when it is updated or removed.
+public class ModbusCommandPlan {
+
+	private final String command;
+	private final String method;
+	private final List<ModbusOperationPlan> operations;
+
+	public ModbusCommandPlan(String command, String method, List<ModbusOperationPlan> operations) {
+		this.command = command;
+		this.method = method;
+		this.operations = Collections.unmodifiableList(operations);
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public List<ModbusOperationPlan> getOperations() {
+		return operations;
+	}
+
+	@Override
+	public String toString() {
+		return "ModbusCommandPlan [command=" + command + ", method=" + method + ", operations=" + operations + "]";
+	}
+}
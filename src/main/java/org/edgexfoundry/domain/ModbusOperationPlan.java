@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.domain;
+
+import org.edgexfoundry.domain.meta.ResourceOperation;
+
+// A single resource operation of a command plan, with any resource
+// indirection already followed down to the device resource it acts on.
+public class ModbusOperationPlan {
+
+	private final ResourceOperation operation;
+	private final ModbusResourcePlan resource;
+	private final boolean set;
+
+	public ModbusOperationPlan(ResourceOperation operation, ModbusResourcePlan resource, boolean set) {
+		this.operation = operation;
+		this.resource = resource;
+		this.set = set;
+	}
+
+	public ResourceOperation getOperation() {
+		return operation;
+	}
+
+	public ModbusResourcePlan getResource() {
+		return resource;
+	}
+
+	// whether the operation writes; a get nested in a set command reads
+	public boolean isSet() {
+		return set;
+	}
+
+	@Override
+	public String toString() {
+		return "ModbusOperationPlan [resource=" + resource.getName() + ", set=" + set + "]";
+	}
+}
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.domain;
+
+import org.edgexfoundry.domain.core.Reading;
+
+// A reading that keeps the typed value it was built from, so publishing
+// decisions compare primitives instead of parsing the text again. The value
+// is transient and has no bean accessor, events sent to core data or spooled
+// carry the text only.
+public class ModbusReading extends Reading {
+
+	private static final long serialVersionUID = 1L;
+	private transient ReadingValue readingValue;
+
+	public ModbusReading(ReadingValue readingValue) {
+		this.readingValue = readingValue;
+	}
+
+	// the typed value, or text of the reading's value when there is none
+	public static ReadingValue valueOf(Reading reading) {
+		if (reading instanceof ModbusReading && ((ModbusReading) reading).readingValue != null) {
+			return ((ModbusReading) reading).readingValue;
+		}
+		return ReadingValue.ofText(reading.getValue());
+	}
+}
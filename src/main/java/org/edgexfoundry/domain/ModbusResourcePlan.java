@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.edgexfoundry.domain.meta.PropertyValue;
+import org.edgexfoundry.exception.controller.DataValidationException;
+
+// Everything the driver needs to read or write one device resource, resolved
+// once when the device is added so that no profile strings are parsed per
+// operation. Definition errors are kept and reported when the resource is used.
+public class ModbusResourcePlan {
+
+	private final ModbusObject object;
+	private final String deviceName;
+	private final PrimaryTable primaryTable;
+	private final ModbusValueType valueType;
+	private final Integer unitId;
+	private final int address;
+	private final int length;
+	private final boolean byteSwap;
+	private final boolean wordSwap;
+	private final boolean signed;
+	private final boolean block;
+	private final ModbusBitField bitField;
+	private List<ModbusResourcePlan> references = Collections.emptyList();
+
+	public ModbusResourcePlan(ModbusObject object, ModbusDevice device) {
+		ModbusAttribute attributes = object.getAttributes();
+		this.object = object;
+		this.deviceName = device.getName();
+		this.primaryTable = resolvePrimaryTable(attributes);
+		this.valueType = resolveValueType(object);
+		this.unitId = resolveUnitId(device);
+
+		int baseAddress = 0;
+		if (device.getLocation() != null && device.getLocation().getBaseAddress() != null) {
+			baseAddress = device.getLocation().getBaseAddress();
+		}
+		this.address = baseAddress + attributes.getStartingAddress() - 1;
+		this.length = attributes.getLength();
+		this.byteSwap = attributes.isByteSwap();
+		this.wordSwap = attributes.isWordSwap();
+		this.block = attributes.getDeviceResourceReferences() != null
+				&& !attributes.getDeviceResourceReferences().isEmpty();
+
+		PropertyValue value = object.getProperties() != null ? object.getProperties().getValue() : null;
+		this.signed = value != null && Boolean.TRUE.equals(value.getSigned());
+		this.bitField = value != null ? new ModbusBitField(value) : null;
+	}
+
+	// resolve the deviceResourceReferences of a block resource against the
+	// plans of the other resources of the same device
+	public void resolveReferences(Map<String, ModbusResourcePlan> plans) {
+		if (!block) {
+			return;
+		}
+		List<ModbusResourcePlan> resolved = new ArrayList<>();
+		for (String name : object.getAttributes().getDeviceResourceReferences()) {
+			if (plans.get(name) != null) {
+				resolved.add(plans.get(name));
+			}
+		}
+		references = Collections.unmodifiableList(resolved);
+	}
+
+	public ModbusObject getObject() {
+		return object;
+	}
+
+	public String getName() {
+		return object.getName();
+	}
+
+	public String getDeviceName() {
+		return deviceName;
+	}
+
+	public PrimaryTable getPrimaryTable() {
+		if (primaryTable == null) {
+			throw new DataValidationException(
+					"Modbus Primary Table definition error. Please identify DISCRETES_INPUT, COILS, INPUT_REGISTERS, or HOLDING_REGISTER");
+		}
+		return primaryTable;
+	}
+
+	public ModbusValueType getValueType() {
+		if (valueType == null) {
+			throw new DataValidationException(
+					"Modbus Value Type definition error. Please identify FLOAT32, FLOAT64, INT16, INT32, or INT64");
+		}
+		return valueType;
+	}
+
+	public int getUnitId() {
+		if (unitId == null) {
+			throw new DataValidationException("Modbus unit id (addressable path) is not a number");
+		}
+		return unitId;
+	}
+
+	public int getAddress() {
+		return address;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public boolean isByteSwap() {
+		return byteSwap;
+	}
+
+	public boolean isWordSwap() {
+		return wordSwap;
+	}
+
+	public boolean isSigned() {
+		return signed;
+	}
+
+	// whether the resource reads a block of other resources of the device
+	public boolean isBlock() {
+		return block;
+	}
+
+	public ModbusBitField getBitField() {
+		return bitField;
+	}
+
+	public List<ModbusResourcePlan> getReferences() {
+		return references;
+	}
+
+	private PrimaryTable resolvePrimaryTable(ModbusAttribute attributes) {
+		try {
+			return PrimaryTable.valueOf(attributes.getPrimaryTable());
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private ModbusValueType resolveValueType(ModbusObject object) {
+		try {
+			return ModbusValueType.valueOf(object.getProperties().getValue().getType());
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private Integer resolveUnitId(ModbusDevice device) {
+		try {
+			return Integer.valueOf(device.getAddressable().getPath());
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ModbusResourcePlan [name=" + getName() + ", primaryTable=" + primaryTable + ", valueType="
+				+ valueType + ", unitId=" + unitId + ", address=" + address + "]";
+	}
+}
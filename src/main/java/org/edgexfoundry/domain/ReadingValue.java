@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.domain;
+
+// A value read from a device, kept as a primitive from decoding through
+// scaling, mapping and caching. It is only turned into text when a Reading is
+// built, and the text is the same as the value used to be formatted with.
+public final class ReadingValue {
+
+	public enum Type {
+		INTEGER, BOOLEAN, FLOAT32, FLOAT64, TEXT
+	}
+
+	private final Type type;
+	private final long longValue;
+	private final double doubleValue;
+	private String text;
+
+	private ReadingValue(Type type, long longValue, double doubleValue, String text) {
+		this.type = type;
+		this.longValue = longValue;
+		this.doubleValue = doubleValue;
+		this.text = text;
+	}
+
+	public static ReadingValue ofLong(long value) {
+		return new ReadingValue(Type.INTEGER, value, value, null);
+	}
+
+	public static ReadingValue ofBoolean(byte value) {
+		return new ReadingValue(Type.BOOLEAN, value, value, null);
+	}
+
+	public static ReadingValue ofFloat(float value) {
+		return new ReadingValue(Type.FLOAT32, (long) value, value, null);
+	}
+
+	public static ReadingValue ofDouble(double value) {
+		return new ReadingValue(Type.FLOAT64, (long) value, value, null);
+	}
+
+	public static ReadingValue ofText(String value) {
+		return new ReadingValue(Type.TEXT, 0, 0, value);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public long longValue() {
+		if (type == Type.TEXT) {
+			return Long.decode(text);
+		}
+		return longValue;
+	}
+
+	public double doubleValue() {
+		if (type == Type.TEXT) {
+			return Double.parseDouble(text);
+		}
+		return doubleValue;
+	}
+
+	// the value as Float.parseFloat would have read its text
+	public float floatValue() {
+		switch (type) {
+		case INTEGER:
+		case BOOLEAN:
+			return longValue;
+		case FLOAT32:
+			return (float) doubleValue;
+		default:
+			return Float.parseFloat(toString());
+		}
+	}
+
+	// whether there is nothing to report, as for the empty result of a write
+	public boolean isEmpty() {
+		return type == Type.TEXT && (text == null || text.equals("") || text.equals("{}"));
+	}
+
+	@Override
+	public String toString() {
+		if (text == null) {
+			switch (type) {
+			case FLOAT32:
+				text = Float.toString((float) doubleValue);
+				break;
+			case FLOAT64:
+				text = Double.toString(doubleValue);
+				break;
+			default:
+				text = Long.toString(longValue);
+			}
+		}
+		return text;
+	}
+}
@@ -20,25 +20,33 @@
 package org.edgexfoundry.domain;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.edgexfoundry.domain.core.Reading;
 
+// The operations of one command. The future completes with the readings once
+// the command has been dispatched (sealed) and every operation has finished,
+// or exceptionally as soon as one operation fails.
 public class Transaction {	
 	private String transactionId;
 	private List<Reading> readings;
+	// readings answered from another command's read or from the cache, returned
+	// to the caller but already published by whoever read them
+	private final List<Reading> localReadings = new ArrayList<Reading>();
 	private Map<String, Boolean> opIds;
-	private Boolean finished = true;
-    private Boolean failed = false;
-    private RuntimeException failException;
+	// outstanding operations, plus one until the transaction is sealed
+	private final AtomicInteger pending = new AtomicInteger(1);
+	private final CompletableFuture<List<Reading>> future = new CompletableFuture<>();
 	
 	public Transaction() {
 		setTransactionId(UUID.randomUUID().toString());
 		setReadings(new ArrayList<Reading>());
-		opIds = new HashMap<String, Boolean>();
+		opIds = new ConcurrentHashMap<String, Boolean>();
 	}
 	
 	private void setReadings(List<Reading> readings) {
@@ -51,20 +59,43 @@ public class Transaction {
 
 	public String newOpId() {
 		String opId = UUID.randomUUID().toString();
+		pending.incrementAndGet();
 		opIds.put(opId, false);
-		finished = false;
 		return opId;
 	}
 	
 	public void finishOp(String opId, List<Reading> readings) {
-		addReadings(readings);
-		opIds.put(opId, true);
-		if (!opIds.values().contains(false))
-			finished = true;
+		finishOp(opId, readings, true);
+	}
+
+	public void finishOp(String opId, List<Reading> readings, boolean publish) {
+		if (opIds.remove(opId) == null)
+			return;
+		if (publish) {
+			addReadings(readings);
+		} else if (readings != null) {
+			synchronized (this.readings) {
+				localReadings.addAll(readings);
+			}
+		}
+		release();
+	}
+
+	// all operations have been dispatched
+	public void seal() {
+		release();
+	}
+
+	private void release() {
+		if (pending.decrementAndGet() == 0) {
+			synchronized (this.readings) {
+				future.complete(new ArrayList<Reading>(this.readings));
+			}
+		}
 	}
 	
 	public Boolean isFinished() {
-		return finished;
+		return future.isDone();
 	}
 
 	public String getTransactionId() {
@@ -72,28 +103,34 @@ public class Transaction {
 	}
 
 	public List<Reading> getReadings() {
-		return readings;
+		synchronized (readings) {
+			return new ArrayList<Reading>(readings);
+		}
 	}
 
-	private void addReadings(List<Reading> readings) {
-		if (readings != null)
-			this.readings.addAll(readings);
+	public List<Reading> getLocalReadings() {
+		synchronized (readings) {
+			return new ArrayList<Reading>(localReadings);
+		}
 	}
 
-    public Boolean isFailed() {
-        return failed;
-    }
+	private void addReadings(List<Reading> readings) {
+		if (readings != null) {
+			synchronized (this.readings) {
+				this.readings.addAll(readings);
+			}
+		}
+	}
 
-    public void setFailed() {
-        failed = true;
-        finished = true;
-    }
+	public CompletableFuture<List<Reading>> getFuture() {
+		return future;
+	}
 
-    public RuntimeException getFailException() {
-        return failException;
-    }
+	public Boolean isFailed() {
+		return future.isCompletedExceptionally();
+	}
 
-    public void setFailException(RuntimeException failException) {
-        this.failException = failException;
-    }
-}
\ No newline at end of file
+	public void fail(RuntimeException failException) {
+		future.completeExceptionally(failException);
+	}
+}
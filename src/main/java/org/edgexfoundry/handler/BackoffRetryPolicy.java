@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.handler;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Exponential backoff with jitter. Only failures of one of the retryable
+// classes are retried, never one of the fatal classes, and every retry is
+// drawn from a token bucket per budget name so that a dead device or bus
+// cannot keep its line busy with retries. A failure matching both lists goes
+// by the more specific class, so a retryable subclass of a fatal class is
+// still retried.
+public class BackoffRetryPolicy implements RetryPolicy {
+
+	private final int maxAttempts;
+	private final long delay;
+	private final long maxDelay;
+	private final double multiplier;
+	private final double jitter;
+	private final int budget;
+	private final long budgetWindow;
+	private final List<Class<?>> retryable;
+	private final List<Class<?>> fatal;
+
+	private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong exhausted = new AtomicLong();
+	private final AtomicLong denied = new AtomicLong();
+	private final AtomicLong notRetryable = new AtomicLong();
+
+	// maxAttempts and budget of 0 are unlimited, jitter is the share of the
+	// delay that is randomised
+	public BackoffRetryPolicy(int maxAttempts, long delay, long maxDelay, double multiplier, double jitter,
+			int budget, long budgetWindow, List<Class<?>> retryable, List<Class<?>> fatal) {
+		this.maxAttempts = maxAttempts;
+		this.delay = delay;
+		this.maxDelay = maxDelay;
+		this.multiplier = multiplier;
+		this.jitter = Math.max(0, Math.min(1, jitter));
+		this.budget = budget;
+		this.budgetWindow = budgetWindow;
+		this.retryable = retryable;
+		this.fatal = fatal;
+	}
+
+	@Override
+	public long getDelay(int attempts, Throwable failure, String... budgetNames) {
+		if (!isRetryable(failure)) {
+			notRetryable.incrementAndGet();
+			return -1;
+		}
+		if (maxAttempts > 0 && attempts >= maxAttempts) {
+			exhausted.incrementAndGet();
+			return -1;
+		}
+		if (!takeBudget(budgetNames)) {
+			denied.incrementAndGet();
+			return -1;
+		}
+		retries.incrementAndGet();
+
+		double backoff = Math.min(maxDelay, delay * Math.pow(multiplier, Math.max(0, attempts - 1)));
+		return Math.round(backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("retries", retries.get());
+		statistics.put("exhausted", exhausted.get());
+		statistics.put("budgetDenied", denied.get());
+		statistics.put("notRetryable", notRetryable.get());
+		return statistics;
+	}
+
+	private boolean isRetryable(Throwable failure) {
+		boolean matched = false;
+		for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+			int fatalDistance = getDistance(fatal, cause);
+			int retryableDistance = getDistance(retryable, cause);
+			if (fatalDistance >= 0 && (retryableDistance < 0 || fatalDistance <= retryableDistance)) {
+				return false;
+			}
+			matched |= retryableDistance >= 0;
+			if (cause.getCause() == cause) {
+				break;
+			}
+		}
+		return matched;
+	}
+
+	// how many superclasses up from the failure's class the closest of the
+	// classes is, -1 when the failure is none of them
+	private int getDistance(List<Class<?>> classes, Throwable failure) {
+		int closest = -1;
+		for (Class<?> type : classes) {
+			if (!type.isInstance(failure)) {
+				continue;
+			}
+			int distance = 0;
+			for (Class<?> c = failure.getClass(); c != null && !type.equals(c); c = c.getSuperclass()) {
+				distance++;
+			}
+			if (closest < 0 || distance < closest) {
+				closest = distance;
+			}
+		}
+		return closest;
+	}
+
+	// all or nothing across the named budgets
+	private boolean takeBudget(String... budgetNames) {
+		if (budget <= 0) {
+			return true;
+		}
+		for (int i = 0; i < budgetNames.length; i++) {
+			Budget bucket = budgets.computeIfAbsent(budgetNames[i], name -> new Budget(budget, budgetWindow));
+			if (!bucket.take()) {
+				for (int j = 0; j < i; j++) {
+					budgets.get(budgetNames[j]).refund();
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// token bucket refilled with budget tokens per window
+	private static class Budget {
+		private final int capacity;
+		private final double refillPerMilli;
+		private double tokens;
+		private long refilledAt = System.currentTimeMillis();
+
+		Budget(int capacity, long window) {
+			this.capacity = capacity;
+			this.refillPerMilli = (double) capacity / Math.max(1, window);
+			this.tokens = capacity;
+		}
+
+		synchronized boolean take() {
+			long now = System.currentTimeMillis();
+			tokens = Math.min(capacity, tokens + (now - refilledAt) * refillPerMilli);
+			refilledAt = now;
+			if (tokens < 1) {
+				return false;
+			}
+			tokens--;
+			return true;
+		}
+
+		synchronized void refund() {
+			tokens = Math.min(capacity, tokens + 1);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.handler;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.edgexfoundry.domain.ModbusDevice;
+import org.edgexfoundry.domain.meta.Addressable;
+import org.edgexfoundry.domain.meta.Protocol;
+import org.edgexfoundry.exception.ServiceOverloadedException;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Runs one command on many devices at once. Devices behind the same TCP
+// endpoint or on the same serial line share a lane that limits how many of
+// their commands run together; the rest wait in the lane without holding a
+// thread. Each device gets its own timeout so a slow device is reported with
+// an error marker instead of holding back the other results.
+@Service
+public class CommandFanOut {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(CommandFanOut.class);
+
+	// suffix of the key under which a device's failure is reported
+	public static final String ERROR_SUFFIX = ".error";
+
+	@Value("${modbus.fanout.tcp.per.endpoint:4}")
+	private int perEndpoint;
+
+	@Value("${modbus.fanout.rtu.per.line:1}")
+	private int perLine;
+
+	// counted from the moment the device's command is submitted, time spent
+	// waiting in its lane included
+	@Value("${modbus.fanout.device.timeout:10000}")
+	private long deviceTimeout;
+
+	@Autowired
+	private ModbusHandler modbusHandler;
+
+	@Autowired
+	private OperationDispatcher dispatcher;
+
+	private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	public CompletableFuture<Map<String, String>> execute(List<ModbusDevice> devices, String cmd, String arguments) {
+		Map<String, String> responses = Collections.synchronizedMap(new LinkedHashMap<String, String>());
+		CompletableFuture<?>[] results = new CompletableFuture<?>[devices.size()];
+		for (int i = 0; i < results.length; i++) {
+			ModbusDevice device = devices.get(i);
+			results[i] = execute(device, cmd, arguments).handle((response, e) -> {
+				if (e == null) {
+					responses.putAll(response);
+				} else {
+					Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+					responses.put(device.getName() + ERROR_SUFFIX, String.valueOf(cause.getMessage()));
+				}
+				return null;
+			});
+		}
+		return CompletableFuture.allOf(results).thenApply(done -> responses);
+	}
+
+	private CompletableFuture<Map<String, String>> execute(ModbusDevice device, String cmd, String arguments) {
+		CompletableFuture<Map<String, String>> result = new CompletableFuture<>();
+		Lane lane = lanes.computeIfAbsent(getLaneKey(device.getAddressable()),
+				key -> new Lane(isTCP(device.getAddressable()) ? perEndpoint : perLine));
+		ScheduledFuture<?> timer = dispatcher.schedule(() -> {
+			if (result.completeExceptionally(new IllegalStateException(
+					"Command " + cmd + " timed out after " + deviceTimeout + "ms"))) {
+				timeouts.incrementAndGet();
+				logger.error("Command " + cmd + " for device " + device.getName() + " timed out after "
+						+ deviceTimeout + "ms");
+			}
+		}, deviceTimeout);
+		result.whenComplete((response, e) -> timer.cancel(false));
+		lane.submit(result, () -> run(lane, device, cmd, arguments, result));
+		return result;
+	}
+
+	private void run(Lane lane, ModbusDevice device, String cmd, String arguments,
+			CompletableFuture<Map<String, String>> result) {
+		CompletableFuture<Map<String, String>> command;
+		try {
+			command = modbusHandler.executeCommandAsync(device, cmd, arguments);
+		} catch (RuntimeException e) {
+			command = new CompletableFuture<>();
+			command.completeExceptionally(e);
+		}
+		// the lane is only released when the device is done, even after a
+		// timeout, so the limit holds for what is really on the wire
+		command.whenComplete((response, e) -> {
+			lane.release();
+			if (e != null) {
+				failures.incrementAndGet();
+				result.completeExceptionally(e);
+			} else {
+				result.complete(response);
+			}
+		});
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("timeouts", timeouts.get());
+		statistics.put("failures", failures.get());
+		Map<String, Object> running = new LinkedHashMap<>();
+		lanes.forEach((key, lane) -> running.put(key, lane.getStatistics()));
+		statistics.put("lanes", running);
+		return statistics;
+	}
+
+	private String getLaneKey(Addressable addressable) {
+		if (isTCP(addressable)) {
+			return addressable.getAddress() + ":" + addressable.getPort();
+		}
+		return addressable.getAddress().split(",")[0].trim();
+	}
+
+	private boolean isTCP(Addressable addressable) {
+		return addressable.getProtocol() == Protocol.HTTP || addressable.getProtocol() == Protocol.TCP;
+	}
+
+	private class Lane {
+		private final int limit;
+		private int running;
+		private final Queue<Waiting> waiting = new ArrayDeque<>();
+
+		Lane(int limit) {
+			this.limit = Math.max(1, limit);
+		}
+
+		void submit(CompletableFuture<?> result, Runnable command) {
+			synchronized (this) {
+				if (running >= limit) {
+					waiting.add(new Waiting(result, command));
+					return;
+				}
+				running++;
+			}
+			command.run();
+		}
+
+		// the next command starts on a dispatcher thread rather than on the
+		// one that finished the previous command, so commands failing at once
+		// do not recurse through the lane; commands that timed out while
+		// waiting are skipped
+		void release() {
+			while (true) {
+				Waiting next;
+				synchronized (this) {
+					do {
+						next = waiting.poll();
+					} while (next != null && next.result.isDone());
+					if (next == null) {
+						running--;
+						return;
+					}
+				}
+				try {
+					dispatcher.dispatch(next.command);
+					return;
+				} catch (ServiceOverloadedException e) {
+					failures.incrementAndGet();
+					next.result.completeExceptionally(e);
+				}
+			}
+		}
+
+		synchronized Map<String, Object> getStatistics() {
+			Map<String, Object> statistics = new LinkedHashMap<>();
+			statistics.put("running", running);
+			statistics.put("waiting", waiting.size());
+			return statistics;
+		}
+	}
+
+	private static class Waiting {
+		private final CompletableFuture<?> result;
+		private final Runnable command;
+
+		Waiting(CompletableFuture<?> result, Runnable command) {
+			this.result = result;
+			this.command = command;
+		}
+	}
+}
@@ -19,8 +19,10 @@
  *******************************************************************************/
 package org.edgexfoundry.handler;
 
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import org.edgexfoundry.Initializer;
@@ -47,8 +49,11 @@ public class CommandHandler {
 	
 	@Autowired
 	Initializer init;
+	
+	@Autowired
+	CommandFanOut fanOut;
 
-	public Map<String,String> getResponse(String deviceId, String cmd, String arguments) {
+	public CompletableFuture<Map<String,String>> getResponse(String deviceId, String cmd, String arguments) {
 		if (init.isServiceLocked()) {
 			logger.error("GET request cmd: " + cmd + " with device service locked on: " + deviceId);
 			throw new ServiceLockedException();
@@ -59,28 +64,30 @@ public class CommandHandler {
 		}
 		ModbusDevice device = devices.getModbusDeviceById(deviceId);
 		if (modbusHandler.commandExists(device, cmd)) {
-			return modbusHandler.executeCommand(device, cmd, arguments);
+			return modbusHandler.executeCommandAsync(device, cmd, arguments);
 		} else {
 			logger.error("Command: " + cmd + " does not exist for device with id: " + deviceId);
 			throw new BadCommandRequestException("Command: " + cmd + " does not exist for device with id: " + deviceId);
 		}
 	}
 
-	public Map<String,String> getResponses(String cmd, String arguments) {
-		Map<String,String> responses = new LinkedHashMap<String,String>();
+	// devices are commanded concurrently, a device that fails or times out is
+	// reported under <device name>.error next to the other devices' readings
+	public CompletableFuture<Map<String,String>> getResponses(String cmd, String arguments) {
 		if (init.isServiceLocked()) {
 			logger.error("GET request cmd: " + cmd + " with device service locked ");
 			throw new ServiceLockedException();
 		}
+		List<ModbusDevice> targets = new ArrayList<ModbusDevice>();
 		for (String deviceId: devices.getDevices().entrySet().stream().map(d -> d.getValue().getId()).collect(Collectors.toList())) {
 			if (devices.isDeviceLocked(deviceId)) {
 				continue;
 			}
 			ModbusDevice device = devices.getModbusDeviceById(deviceId);
 			if (modbusHandler.commandExists(device, cmd))
-				responses.putAll(modbusHandler.executeCommand(device, cmd, arguments));
+				targets.add(device);
 		}
-		return responses;
+		return fanOut.execute(targets, cmd, arguments);
 	}
 
 }
@@ -20,23 +20,19 @@
 package org.edgexfoundry.handler;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-import org.edgexfoundry.controller.DeviceClient;
-import org.edgexfoundry.controller.EventClient;
-import org.edgexfoundry.data.DeviceStore;
 import org.edgexfoundry.domain.ModbusObject;
+import org.edgexfoundry.domain.ModbusReading;
+import org.edgexfoundry.domain.ReadingValue;
 import org.edgexfoundry.domain.ResponseObject;
 import org.edgexfoundry.domain.core.Event;
 import org.edgexfoundry.domain.core.Reading;
-import org.edgexfoundry.domain.meta.Device;
-import org.edgexfoundry.domain.meta.OperatingState;
 import org.edgexfoundry.support.logging.client.EdgeXLogger;
 import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -45,25 +41,23 @@ public class CoreDataMessageHandler {
 
 	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(CoreDataMessageHandler.class);
 
-	@Value("${service.connect.retries}")
-	private int retries;
-	@Value("${service.connect.wait}")
-	private long delay;
+	@Autowired
+	private CoreDataPublisher publisher;
 
 	@Autowired
-	private DeviceClient deviceClient;
-	
+	private DeviceStatusUpdater statusUpdater;
+
 	@Autowired
-	private EventClient eventClient;
-	
+	private PublishFilter publishFilter;
+
 	@Autowired
-	private DeviceStore devices;
-	
-	public Reading buildReading(String key, String value, String deviceName) {
-		Reading reading = new Reading();
+	private WindowAggregator aggregator;
+
+	public Reading buildReading(String key, ReadingValue value, String deviceName) {
+		Reading reading = new ModbusReading(value);
 		reading.setOrigin(System.currentTimeMillis());
 		reading.setName(key);
-		reading.setValue(value);
+		reading.setValue(value.toString());
 		reading.setDevice(deviceName);
 		return reading;
 	}
@@ -75,68 +69,39 @@ public class CoreDataMessageHandler {
 		return event;
 	}
 
-	private boolean sendEvent(Event event, int attempt) {
-		if (retries == 0 || attempt < retries) {
-			if (event != null) {
-				try {
-					eventClient.add(event);
-					return true;
-				} catch (Exception e) { // something happened trying to send to
-										// core data - likely that the service
-										// is down.
-					logger.debug("Problem sending event for " + event.getDevice()
-							+ " to core data.  Retrying (attempt " + (attempt + 1) + ")...");
-					try {
-						Thread.sleep(delay);
-					} catch (InterruptedException interrupt) {
-						logger.debug("Event send delay interrupted");
-						interrupt.printStackTrace();
-					}
-					return sendEvent(event, ++attempt);
-				}
-			}
+	public CompletableFuture<List<ResponseObject>> sendCoreData(String deviceName, List<Reading> readings,
+			Map<String, ModbusObject> objects) {
+		if (objects == null) {
+			logger.debug("No profile object found for the device " + deviceName + ".  MQTT message ignored.");
+			return CompletableFuture.completedFuture(new ArrayList<ResponseObject>());
 		}
-		return false;
-	}
 
-	private void updateLastConnected(String deviceName) {
-		Device device = devices.getDevice(deviceName);
-		if (device != null) {
-			deviceClient.updateLastConnected(device.getId(), Calendar.getInstance().getTimeInMillis());
-			if (device.getOperatingState().equals(OperatingState.DISABLED))
-				devices.setDeviceByIdOpState(device.getId(), OperatingState.ENABLED);
-		} else {
-			logger.debug("No device found for device name: " + deviceName + ". Could not update last connected time");
+		List<ResponseObject> resps = new ArrayList<>();
+		logger.debug("readings: " + readings);
+		for (Reading reading: readings) {
+			ResponseObject resp = new ResponseObject(reading.getName(), reading.getValue());
+			resps.add(resp);
 		}
-	}
+		// the device answered; whether core data takes the event does not
+		// change the device's state, its circuit breaker owns that
+		statusUpdater.seen(deviceName);
 
-	public List<ResponseObject> sendCoreData(String deviceName, List<Reading> readings, Map<String, ModbusObject> objects) {
-		try{
-		
-			if (objects != null) {
-	
-				List<ResponseObject> resps = new ArrayList<>();
-				logger.debug("readings: " + readings);
-				for (Reading reading: readings) {										
-					ResponseObject resp = new ResponseObject(reading.getName(), reading.getValue());						
-					resps.add(resp);
-				}
-				boolean success = sendEvent(buildEvent(deviceName, readings), 0);
-				if (success) {
-					updateLastConnected(deviceName);
-					return resps;
-				}
-				else {
-					if (devices.getDevice(deviceName).getOperatingState().equals(OperatingState.ENABLED))
-						devices.setDeviceOpState(deviceName, OperatingState.DISABLED);
-					logger.error("Could not send event to core data for " + deviceName + ".  Check core data service");
-				}
-			} else
-				logger.debug("No profile object found for the device " + deviceName + ".  MQTT message ignored.");
-		}catch(Exception e){
-			logger.error("Cannot push the readings to Coredata " + e.getMessage());
-			e.printStackTrace();
+		// aggregated resources are published when their window closes
+		List<Reading> raw = aggregator.absorb(deviceName, readings, objects);
+		List<Reading> changed = publishFilter.filter(deviceName, raw, objects);
+		if (!changed.isEmpty()) {
+			// the readings are returned without waiting for core data
+			publish(deviceName, changed);
 		}
-		return new ArrayList<ResponseObject>();
+		return CompletableFuture.completedFuture(resps);
+	}
+
+	// events core data did not take are spooled and counted by the publisher
+	public void publish(String deviceName, List<Reading> readings) {
+		publisher.publish(buildEvent(deviceName, readings)).thenAccept(success -> {
+			if (!success) {
+				logger.warn("Event for " + deviceName + " was not taken by core data and was spooled or dropped");
+			}
+		});
 	}
 }
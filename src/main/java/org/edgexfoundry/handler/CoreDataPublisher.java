@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.edgexfoundry.controller.EventClient;
+import org.edgexfoundry.domain.core.Event;
+import org.edgexfoundry.domain.core.Reading;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Sends events to core data off the command path. Events wait in bounded
+// queues for a small pool of sender threads, one queue per sender; a device's
+// events always go to the same sender so they reach core data in the order
+// they were published. Each sender takes what is queued up to the batch size
+// and posts the events of one device as a single event carrying all their
+// readings. A full queue holds the producer for the offer
+// timeout; events that cannot be queued or sent go to the event spool.
+// Senders never wait out a retry delay, core data is held off instead.
+@Service
+public class CoreDataPublisher {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(CoreDataPublisher.class);
+
+	@Value("${coredata.publish.queue.size:1000}")
+	private int queueSize;
+
+	@Value("${coredata.publish.workers:2}")
+	private int workers;
+
+	// events taken from the queue at once and merged per device
+	@Value("${coredata.publish.batch.size:20}")
+	private int batchSize;
+
+	@Value("${coredata.publish.offer.timeout:100}")
+	private long offerTimeout;
+
+	@Autowired
+	private EventClient eventClient;
+
+	@Autowired
+	private RetryPolicies retries;
+
+	@Autowired
+	private EventSpool spool;
+
+	private List<BlockingQueue<Pending>> queues;
+	private ExecutorService senders;
+	private volatile boolean running;
+
+	// consecutive failed attempts, and until when core data is not tried
+	private final AtomicInteger failures = new AtomicInteger();
+	private volatile long holdUntil;
+
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong spooled = new AtomicLong();
+	private final AtomicLong latencyTotal = new AtomicLong();
+	private final AtomicLong latencyMax = new AtomicLong();
+
+	@PostConstruct
+	public void start() {
+		queues = new ArrayList<>(workers);
+		for (int i = 0; i < workers; i++) {
+			queues.add(new ArrayBlockingQueue<>(Math.max(1, queueSize / workers)));
+		}
+		AtomicInteger count = new AtomicInteger();
+		senders = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "coredata-publisher-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		running = true;
+		for (BlockingQueue<Pending> queue : queues) {
+			senders.execute(() -> work(queue));
+		}
+		logger.info("Publishing events to core data with " + workers + " senders and a queue of " + queueSize);
+	}
+
+	@PreDestroy
+	public void stop() {
+		running = false;
+		senders.shutdownNow();
+	}
+
+	// the future completes with whether core data took the event
+	public CompletableFuture<Boolean> publish(Event event) {
+		Pending pending = new Pending(event);
+		BlockingQueue<Pending> queue = queues.get(Math.floorMod(Objects.hashCode(event.getDevice()), queues.size()));
+		try {
+			if (!queue.offer(pending, offerTimeout, TimeUnit.MILLISECONDS)) {
+				logger.warn("Core data publish queue is full, spooling event for " + event.getDevice());
+				overflow(Collections.singletonList(pending));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			overflow(Collections.singletonList(pending));
+		}
+		return pending.result;
+	}
+
+	public int getQueued() {
+		return queues.stream().mapToInt(BlockingQueue::size).sum();
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		long sent = requests.get();
+		statistics.put("queued", getQueued());
+		statistics.put("published", published.get());
+		statistics.put("requests", sent);
+		statistics.put("failed", failed.get());
+		statistics.put("spooled", spooled.get());
+		statistics.put("dropped", dropped.get());
+		statistics.put("latencyAvg", sent == 0 ? 0 : latencyTotal.get() / sent);
+		statistics.put("latencyMax", latencyMax.get());
+		return statistics;
+	}
+
+	private void work(BlockingQueue<Pending> queue) {
+		List<Pending> batch = new ArrayList<>();
+		while (running) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			queue.drainTo(batch, batchSize - 1);
+
+			Map<String, List<Pending>> devices = new LinkedHashMap<>();
+			for (Pending pending : batch) {
+				devices.computeIfAbsent(pending.event.getDevice(), device -> new ArrayList<>()).add(pending);
+			}
+			devices.values().forEach(this::send);
+			batch.clear();
+		}
+	}
+
+	// each batch gets one attempt; after a failure core data is not tried
+	// again until the backoff delay has passed, events sent meanwhile go
+	// straight to the spool behind the failed ones and are replayed from there
+	private void send(List<Pending> events) {
+		if (System.currentTimeMillis() < holdUntil) {
+			overflow(events);
+			return;
+		}
+		Event event = merge(events);
+		long start = System.currentTimeMillis();
+		try {
+			eventClient.add(event);
+			long latency = System.currentTimeMillis() - start;
+			latencyTotal.addAndGet(latency);
+			latencyMax.accumulateAndGet(latency, Math::max);
+			requests.incrementAndGet();
+			failures.set(0);
+			published.addAndGet(events.size());
+			events.forEach(pending -> pending.result.complete(true));
+		} catch (Exception e) { // something happened trying to send to
+								// core data - likely that the service
+								// is down.
+			long delay = retries.getCoreDataPolicy().getDelay(failures.incrementAndGet(), e, "coredata");
+			if (delay < 0) {
+				// attempts exhausted, back off again from the first delay
+				failures.set(0);
+				delay = retries.getCoreDataPolicy().getDelay(failures.incrementAndGet(), e, "coredata");
+			}
+			holdUntil = System.currentTimeMillis() + Math.max(0, delay);
+			logger.debug("Problem sending event for " + event.getDevice() + " to core data, spooling it and holding "
+					+ "core data off for " + delay + "ms: " + e.getMessage());
+			failed.addAndGet(events.size());
+			overflow(events);
+		}
+	}
+
+	// events core data did not take are kept in the spool for replay, and only
+	// dropped when the spool cannot take them either
+	private void overflow(List<Pending> events) {
+		for (Pending pending : events) {
+			if (spool.append(pending.event)) {
+				spooled.incrementAndGet();
+			} else {
+				dropped.incrementAndGet();
+			}
+			pending.result.complete(false);
+		}
+	}
+
+	private Event merge(List<Pending> events) {
+		if (events.size() == 1) {
+			return events.get(0).event;
+		}
+		Event first = events.get(0).event;
+		List<Reading> readings = new ArrayList<>();
+		for (Pending pending : events) {
+			readings.addAll(pending.event.getReadings());
+		}
+		Event event = new Event(first.getDevice(), readings);
+		event.setOrigin(first.getOrigin());
+		return event;
+	}
+
+	private static class Pending {
+		private final Event event;
+		private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+		Pending(Event event) {
+			this.event = event;
+		}
+	}
+}
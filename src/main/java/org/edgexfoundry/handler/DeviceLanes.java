@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.handler;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.edgexfoundry.exception.ServiceOverloadedException;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// One mailbox per device. A device's operations run in the order they were
+// submitted, at most maxInFlight at a time, so concurrent commands to the same
+// device reuse its pooled connection instead of opening new ones; different
+// devices still run in parallel on the OperationDispatcher. A dispatcher thread
+// that finishes an operation goes on with the next one waiting in the mailbox.
+@Service
+public class DeviceLanes {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(DeviceLanes.class);
+
+	@Value("${modbus.device.max.in.flight:1}")
+	private int maxInFlight;
+
+	// operations waiting in one device's mailbox before new ones are rejected
+	@Value("${modbus.device.queue.size:100}")
+	private int queueSize;
+
+	@Autowired
+	private OperationDispatcher dispatcher;
+
+	private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	public void submit(String deviceName, Runnable operation) {
+		Lane lane = lanes.computeIfAbsent(deviceName, name -> new Lane());
+		synchronized (lane) {
+			if (lane.running >= Math.max(1, maxInFlight)) {
+				if (lane.waiting.size() >= queueSize) {
+					rejected.incrementAndGet();
+					logger.warn("Rejected operation for device " + deviceName + ", " + lane.waiting.size()
+							+ " operations waiting");
+					throw new ServiceOverloadedException(
+							"Too many operations waiting for device " + deviceName + ", try again later");
+				}
+				lane.waiting.add(operation);
+				return;
+			}
+			lane.running++;
+		}
+		try {
+			dispatcher.dispatch(() -> run(lane, operation));
+		} catch (RuntimeException e) {
+			synchronized (lane) {
+				lane.running--;
+			}
+			throw e;
+		}
+	}
+
+	public void remove(String deviceName) {
+		lanes.remove(deviceName);
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("maxInFlight", maxInFlight);
+		statistics.put("rejected", rejected.get());
+		Map<String, Object> depth = new LinkedHashMap<>();
+		lanes.forEach((name, lane) -> {
+			synchronized (lane) {
+				depth.put(name, lane.running + lane.waiting.size());
+			}
+		});
+		statistics.put("depth", depth);
+		return statistics;
+	}
+
+	private void run(Lane lane, Runnable operation) {
+		Runnable current = operation;
+		while (current != null) {
+			try {
+				current.run();
+			} catch (RuntimeException e) {
+				logger.error("Device operation failed: " + e.getMessage());
+				logger.debug(e.getMessage(), e);
+			}
+			synchronized (lane) {
+				current = lane.waiting.poll();
+				if (current == null) {
+					lane.running--;
+				}
+			}
+		}
+	}
+
+	private static class Lane {
+		private int running;
+		private final Queue<Runnable> waiting = new ArrayDeque<>();
+	}
+}
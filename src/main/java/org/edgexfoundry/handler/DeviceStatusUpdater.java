@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.handler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.edgexfoundry.controller.DeviceClient;
+import org.edgexfoundry.data.DeviceStore;
+import org.edgexfoundry.domain.meta.Device;
+import org.edgexfoundry.domain.meta.OperatingState;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Reports device status to metadata in the background. Last connected times
+// are kept in memory and sent per device at most once every interval;
+// operating state changes are checked against the device's local state so
+// only real changes are sent, on the next flush.
+@Service
+public class DeviceStatusUpdater {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(DeviceStatusUpdater.class);
+
+	@Value("${device.lastconnected.interval:30000}")
+	private long lastConnectedInterval;
+
+	@Autowired
+	private DeviceClient deviceClient;
+
+	@Autowired
+	private DeviceStore devices;
+
+	// latest unsent last connected time and operating state per device name
+	private final Map<String, Long> lastConnected = new ConcurrentHashMap<>();
+	private final Map<String, OperatingState> operatingStates = new ConcurrentHashMap<>();
+	private final Map<String, Long> flushedAt = new ConcurrentHashMap<>();
+
+	private final AtomicLong connected = new AtomicLong();
+	private final AtomicLong lastConnectedUpdates = new AtomicLong();
+	private final AtomicLong stateUpdates = new AtomicLong();
+	private final AtomicLong stateUnchanged = new AtomicLong();
+
+	// the device answered
+	public void seen(String deviceName) {
+		connected.incrementAndGet();
+		lastConnected.put(deviceName, System.currentTimeMillis());
+	}
+
+	public void setOperatingState(String deviceName, OperatingState state) {
+		Device device = devices.getDevice(deviceName);
+		if (device == null) {
+			logger.debug("No device found for device name: " + deviceName + ". Could not update its state");
+			return;
+		}
+		synchronized (device) {
+			if (state.equals(device.getOperatingState())) {
+				stateUnchanged.incrementAndGet();
+				return;
+			}
+			device.setOperatingState(state);
+		}
+		operatingStates.put(deviceName, state);
+	}
+
+	public void remove(String deviceName) {
+		lastConnected.remove(deviceName);
+		operatingStates.remove(deviceName);
+		flushedAt.remove(deviceName);
+	}
+
+	@Scheduled(fixedDelayString = "${device.status.flush.interval:1000}")
+	public void flush() {
+		for (String deviceName : operatingStates.keySet()) {
+			OperatingState state = operatingStates.remove(deviceName);
+			if (state == null) {
+				continue;
+			}
+			try {
+				devices.setDeviceOpState(deviceName, state);
+				stateUpdates.incrementAndGet();
+			} catch (Exception e) {
+				logger.error("Cannot set operating state of " + deviceName + " to " + state + ": " + e.getMessage());
+				operatingStates.putIfAbsent(deviceName, state);
+			}
+		}
+
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, Long> entry : lastConnected.entrySet()) {
+			String deviceName = entry.getKey();
+			if (now - flushedAt.getOrDefault(deviceName, 0L) < lastConnectedInterval
+					|| !lastConnected.remove(deviceName, entry.getValue())) {
+				continue;
+			}
+			Device device = devices.getDevice(deviceName);
+			if (device == null) {
+				continue;
+			}
+			try {
+				deviceClient.updateLastConnected(device.getId(), entry.getValue());
+				flushedAt.put(deviceName, now);
+				lastConnectedUpdates.incrementAndGet();
+			} catch (Exception e) {
+				logger.error("Cannot update last connected time of " + deviceName + ": " + e.getMessage());
+				lastConnected.putIfAbsent(deviceName, entry.getValue());
+			}
+		}
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("connected", connected.get());
+		statistics.put("lastConnectedUpdates", lastConnectedUpdates.get());
+		statistics.put("stateUpdates", stateUpdates.get());
+		statistics.put("stateUnchanged", stateUnchanged.get());
+		statistics.put("pending", lastConnected.size() + operatingStates.size());
+		return statistics;
+	}
+}
@@ -0,0 +1,441 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.handler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.edgexfoundry.controller.EventClient;
+import org.edgexfoundry.domain.core.Event;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.google.gson.Gson;
+
+// Keeps events core data did not take in an append-only spool on disk and
+// replays them in order once core data is back. The spool is a sequence of
+// memory-mapped segment files of records [length][crc32][event json]; the
+// replay position is kept in a cursor file so both survive a restart.
+// Segments are dropped oldest first beyond the size cap or the age cap.
+@Service
+public class EventSpool {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(EventSpool.class);
+
+	private static final int RECORD_HEADER = 8;
+	private static final String SEGMENT_SUFFIX = ".spool";
+	private static final String CURSOR_FILE = "cursor";
+
+	@Value("${coredata.spool.enabled:true}")
+	private boolean enabled;
+
+	@Value("${coredata.spool.dir:spool}")
+	private String directory;
+
+	@Value("${coredata.spool.segment.size:8388608}")
+	private int segmentSize;
+
+	@Value("${coredata.spool.max.size:268435456}")
+	private long maxSize;
+
+	@Value("${coredata.spool.max.age:604800000}")
+	private long maxAge;
+
+	// at most batch events are replayed every interval, and none while the
+	// live queue is longer than that
+	@Value("${coredata.spool.replay.interval:500}")
+	private long replayInterval;
+
+	@Value("${coredata.spool.replay.batch:10}")
+	private int replayBatch;
+
+	@Autowired
+	private EventClient eventClient;
+
+	@Autowired
+	private CoreDataPublisher publisher;
+
+	private final Gson gson = new Gson();
+
+	private final ScheduledExecutorService replayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "coredata-spool");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// guards everything below
+	private final Object lock = new Object();
+	private Path path;
+	private final TreeMap<Long, Path> segments = new TreeMap<>();
+	private long writeSequence;
+	private MappedByteBuffer writeBuffer;
+	private long readSequence;
+	private int readOffset;
+	private MappedByteBuffer readBuffer;
+	private long readBufferSequence = -1;
+
+	private final AtomicLong appended = new AtomicLong();
+	private final AtomicLong replayed = new AtomicLong();
+	private final AtomicLong corrupt = new AtomicLong();
+	private final AtomicLong droppedSegments = new AtomicLong();
+
+	@PostConstruct
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		try {
+			open();
+		} catch (IOException e) {
+			logger.error("Cannot open the event spool in " + directory + ", events core data does not take are lost: "
+					+ e.getMessage());
+			enabled = false;
+			return;
+		}
+		replayer.scheduleWithFixedDelay(this::replay, replayInterval, replayInterval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		replayer.shutdownNow();
+		synchronized (lock) {
+			if (writeBuffer != null) {
+				writeBuffer.force();
+			}
+		}
+	}
+
+	// false when the event could not be kept
+	public boolean append(Event event) {
+		if (!enabled) {
+			return false;
+		}
+		byte[] payload = gson.toJson(event).getBytes(StandardCharsets.UTF_8);
+		if (RECORD_HEADER + payload.length > segmentSize) {
+			logger.error("Event for " + event.getDevice() + " does not fit a spool segment, dropping it");
+			return false;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		synchronized (lock) {
+			try {
+				if (writeBuffer == null || writeBuffer.remaining() < RECORD_HEADER + payload.length) {
+					roll();
+				}
+				writeBuffer.putInt(payload.length);
+				writeBuffer.putInt((int) crc.getValue());
+				writeBuffer.put(payload);
+			} catch (IOException e) {
+				logger.error("Cannot spool event for " + event.getDevice() + ": " + e.getMessage());
+				return false;
+			}
+		}
+		appended.incrementAndGet();
+		return true;
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		synchronized (lock) {
+			statistics.put("segments", segments.size());
+			statistics.put("pendingBytes", getPendingBytes());
+		}
+		statistics.put("appended", appended.get());
+		statistics.put("replayed", replayed.get());
+		statistics.put("corrupt", corrupt.get());
+		statistics.put("droppedSegments", droppedSegments.get());
+		return statistics;
+	}
+
+	private void open() throws IOException {
+		path = Paths.get(directory);
+		Files.createDirectories(path);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+				} catch (NumberFormatException e) {
+					logger.warn("Ignoring unexpected file in the event spool: " + file);
+				}
+			}
+		}
+
+		Path cursor = path.resolve(CURSOR_FILE);
+		if (Files.exists(cursor)) {
+			String[] position = new String(Files.readAllBytes(cursor), StandardCharsets.UTF_8).trim().split(" ");
+			readSequence = Long.parseLong(position[0]);
+			readOffset = Integer.parseInt(position[1]);
+		}
+		if (!segments.containsKey(readSequence)) {
+			readSequence = segments.isEmpty() ? 0 : segments.firstKey();
+			readOffset = 0;
+		}
+
+		if (!segments.isEmpty()) {
+			writeSequence = segments.lastKey();
+			writeBuffer = map(segments.get(writeSequence), FileChannel.MapMode.READ_WRITE);
+			writeBuffer.position(findEnd(writeBuffer));
+			logger.info("Event spool has " + segments.size() + " segments and " + getPendingBytes()
+					+ " bytes to replay");
+		}
+	}
+
+	// the end of the valid records of a segment; a torn record at the end is
+	// overwritten by the next append
+	private int findEnd(ByteBuffer buffer) {
+		int position = 0;
+		while (buffer.limit() - position >= RECORD_HEADER) {
+			int length = buffer.getInt(position);
+			if (length <= 0 || length > buffer.limit() - position - RECORD_HEADER
+					|| checksum(buffer, position + RECORD_HEADER, length) != buffer.getInt(position + 4)) {
+				break;
+			}
+			position += RECORD_HEADER + length;
+		}
+		return position;
+	}
+
+	private void roll() throws IOException {
+		if (writeBuffer != null) {
+			writeBuffer.force();
+		}
+		writeSequence = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+		Path file = path.resolve(String.format("%020d", writeSequence) + SEGMENT_SUFFIX);
+		writeBuffer = map(file, FileChannel.MapMode.READ_WRITE);
+		segments.put(writeSequence, file);
+		if (segments.size() == 1) {
+			readSequence = writeSequence;
+			readOffset = 0;
+		}
+
+		while (segments.size() > 1 && (long) segments.size() * segmentSize > maxSize) {
+			drop(segments.firstKey(), "the spool is over " + maxSize + " bytes");
+		}
+	}
+
+	private MappedByteBuffer map(Path file, FileChannel.MapMode mode) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			return channel.map(mode, 0, segmentSize);
+		}
+	}
+
+	private void drop(long sequence, String reason) {
+		droppedSegments.incrementAndGet();
+		logger.warn("Dropping spooled events in " + segments.get(sequence) + ", " + reason);
+		delete(sequence);
+	}
+
+	private void delete(long sequence) {
+		Path file = segments.remove(sequence);
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			logger.error("Cannot delete spool segment " + file + ": " + e.getMessage());
+		}
+		if (sequence == readSequence) {
+			moveCursor(segments.isEmpty() ? writeSequence : segments.firstKey(), 0);
+		}
+	}
+
+	private void replay() {
+		try {
+			if (publisher.getQueued() > replayBatch) {
+				return;
+			}
+			dropExpired();
+
+			List<Record> batch = read(replayBatch);
+			Record last = null;
+			for (Record record : batch) {
+				try {
+					eventClient.add(record.event);
+				} catch (Exception e) {
+					logger.debug("Core data still not taking spooled events: " + e.getMessage());
+					break;
+				}
+				last = record;
+				replayed.incrementAndGet();
+			}
+			if (last != null) {
+				synchronized (lock) {
+					if (last.sequence >= readSequence && segments.containsKey(last.sequence)) {
+						moveCursor(last.sequence, last.next);
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			logger.error("Replaying spooled events failed: " + e.getMessage());
+			logger.debug(e.getMessage(), e);
+		}
+	}
+
+	private void dropExpired() {
+		long oldest = System.currentTimeMillis() - maxAge;
+		synchronized (lock) {
+			while (segments.size() > 1) {
+				long sequence = segments.firstKey();
+				try {
+					if (Files.getLastModifiedTime(segments.get(sequence)).toMillis() >= oldest) {
+						break;
+					}
+				} catch (IOException e) {
+					break;
+				}
+				drop(sequence, "its events are older than " + maxAge + "ms");
+			}
+		}
+	}
+
+	// the next records from the cursor, within one segment; segments read to
+	// the end are deleted and a corrupt record skips the rest of its segment
+	private List<Record> read(int max) {
+		List<Record> batch = new ArrayList<>();
+		synchronized (lock) {
+			int offset = readOffset;
+			while (batch.size() < max && segments.containsKey(readSequence)) {
+				ByteBuffer buffer = getReadBuffer();
+				int length = buffer.limit() - offset >= RECORD_HEADER ? buffer.getInt(offset) : 0;
+				boolean valid = length > 0 && length <= buffer.limit() - offset - RECORD_HEADER
+						&& checksum(buffer, offset + RECORD_HEADER, length) == buffer.getInt(offset + 4);
+				if (!valid) {
+					boolean active = readSequence == writeSequence;
+					if ((active && offset >= writeBuffer.position()) || !batch.isEmpty()) {
+						break;
+					}
+					if (active || length != 0) {
+						corrupt.incrementAndGet();
+						logger.error("Spool segment " + segments.get(readSequence) + " is corrupt at " + offset
+								+ ", skipping the rest of it");
+					}
+					if (active) {
+						moveCursor(readSequence, writeBuffer.position());
+						break;
+					}
+					delete(readSequence);
+					offset = readOffset;
+					continue;
+				}
+
+				byte[] payload = new byte[length];
+				ByteBuffer slice = buffer.duplicate();
+				slice.position(offset + RECORD_HEADER);
+				slice.get(payload);
+				offset += RECORD_HEADER + length;
+				try {
+					batch.add(new Record(gson.fromJson(new String(payload, StandardCharsets.UTF_8), Event.class),
+							readSequence, offset));
+				} catch (RuntimeException e) {
+					corrupt.incrementAndGet();
+					logger.error("Cannot read spooled event: " + e.getMessage());
+					if (batch.isEmpty()) {
+						moveCursor(readSequence, offset);
+					}
+				}
+			}
+		}
+		return batch;
+	}
+
+	private ByteBuffer getReadBuffer() {
+		if (readBufferSequence != readSequence) {
+			try {
+				readBuffer = readSequence == writeSequence ? writeBuffer
+						: map(segments.get(readSequence), FileChannel.MapMode.READ_WRITE);
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot open spool segment " + segments.get(readSequence), e);
+			}
+			readBufferSequence = readSequence;
+		}
+		return readBuffer;
+	}
+
+	private void moveCursor(long sequence, int offset) {
+		readSequence = sequence;
+		readOffset = offset;
+		try {
+			Path temporary = path.resolve(CURSOR_FILE + ".tmp");
+			Files.write(temporary, (sequence + " " + offset).getBytes(StandardCharsets.UTF_8));
+			Files.move(temporary, path.resolve(CURSOR_FILE), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.error("Cannot save the spool cursor, events may be replayed twice: " + e.getMessage());
+		}
+	}
+
+	private long getPendingBytes() {
+		if (segments.isEmpty()) {
+			return 0;
+		}
+		long bytes = -readOffset;
+		for (long sequence : segments.keySet()) {
+			bytes += sequence == writeSequence ? writeBuffer.position() : segmentSize;
+		}
+		return Math.max(0, bytes);
+	}
+
+	private int checksum(ByteBuffer buffer, int offset, int length) {
+		CRC32 crc = new CRC32();
+		ByteBuffer data = buffer.duplicate();
+		data.position(offset);
+		data.limit(offset + length);
+		crc.update(data);
+		return (int) crc.getValue();
+	}
+
+	private static class Record {
+		private final Event event;
+		private final long sequence;
+		private final int next;
+
+		Record(Event event, long sequence, int next) {
+			this.event = event;
+			this.sequence = sequence;
+			this.next = next;
+		}
+	}
+}
@@ -19,17 +19,26 @@
  *******************************************************************************/
 package org.edgexfoundry.handler;
 
-import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 import org.edgexfoundry.data.ObjectStore;
 import org.edgexfoundry.data.ProfileStore;
+import org.edgexfoundry.domain.ModbusCommandPlan;
 import org.edgexfoundry.domain.ModbusDevice;
 import org.edgexfoundry.domain.ModbusObject;
+import org.edgexfoundry.domain.ModbusOperationPlan;
+import org.edgexfoundry.domain.ModbusResourcePlan;
 import org.edgexfoundry.domain.ResponseObject;
 import org.edgexfoundry.domain.ScanList;
 import org.edgexfoundry.domain.Transaction;
@@ -37,15 +46,20 @@ import org.edgexfoundry.domain.core.Reading;
 import org.edgexfoundry.domain.meta.Device;
 import org.edgexfoundry.domain.meta.PropertyValue;
 import org.edgexfoundry.domain.meta.ResourceOperation;
+import org.edgexfoundry.exception.CommandTimeoutException;
 import org.edgexfoundry.exception.controller.NotFoundException;
 import org.edgexfoundry.exception.controller.ServiceException;
+import org.edgexfoundry.modbus.AdaptiveTimeouts;
+import org.edgexfoundry.modbus.DeviceCircuitBreaker;
 import org.edgexfoundry.modbus.DeviceDiscovery;
+import org.edgexfoundry.modbus.IllegalRangeCache;
 import org.edgexfoundry.modbus.ModbusDriver;
 import org.edgexfoundry.modbus.ObjectTransform;
 import org.edgexfoundry.support.logging.client.EdgeXLogger;
 import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
 import com.google.gson.JsonElement;
@@ -75,6 +89,33 @@ public class ModbusHandler {
 	@Autowired
 	private CoreDataMessageHandler processor;
 
+	@Autowired
+	private OperationDispatcher dispatcher;
+
+	@Autowired
+	private DeviceLanes lanes;
+
+	@Autowired
+	private DeviceCircuitBreaker breakers;
+
+	@Autowired
+	private AdaptiveTimeouts responseTimeouts;
+
+	@Autowired
+	private IllegalRangeCache illegalRanges;
+
+	@Autowired
+	private DeviceStatusUpdater statusUpdater;
+
+	@Autowired
+	private PublishFilter publishFilter;
+
+	@Autowired
+	private WindowAggregator aggregator;
+
+	@Autowired
+	private Environment environment;
+
 	@Value("${modbus.device.init:#{null}}")
 	private String modbusInit;
 	@Value("${modbus.device.init.args:#{null}}")
@@ -85,7 +126,32 @@ public class ModbusHandler {
 	@Value("${modbus.device.remove.args:#{null}}")
 	private String modbusRemoveArgs;
 
-	public Map<String, Transaction> transactions = new HashMap<String, Transaction>();
+	// read the resources of a command with as few block requests as possible
+	@Value("${modbus.read.coalesce:true}")
+	private boolean coalesceReads;
+
+	// how long a command waits for its operations, modbus.command.timeout.<command>
+	// overrides it for a single command
+	@Value("${modbus.command.timeout:30000}")
+	private long commandTimeout;
+
+	// identical reads of a device in flight at the same time share one request
+	@Value("${modbus.read.single.flight:true}")
+	private boolean singleFlight;
+
+	// readings of a get no older than this are served from the object cache, 0
+	// always reads the device
+	@Value("${modbus.read.freshness:0}")
+	private long freshness;
+
+	private final Map<String, Transaction> transactions = new ConcurrentHashMap<String, Transaction>();
+
+	// reads in flight by device and resources, each run as a transaction of its own
+	private final Map<String, Transaction> flights = new ConcurrentHashMap<String, Transaction>();
+
+	private final AtomicLong flightsStarted = new AtomicLong();
+	private final AtomicLong flightsJoined = new AtomicLong();
+	private final AtomicLong freshHits = new AtomicLong();
 
 	public void initialize() {
 		if (driver != null)
@@ -93,6 +159,7 @@ public class ModbusHandler {
 	}
 
 	public void initializeDevice(ModbusDevice device) {
+		driver.connectDevice(device.getName(), device.getAddressable());
 		if (modbusInit != null && commandExists(device, modbusInit))
 			executeCommand(device, modbusInit, modbusInitArgs);
 		logger.info("Initialized Device: " + device.getName());
@@ -101,7 +168,14 @@ public class ModbusHandler {
 	public void disconnectDevice(ModbusDevice device) {
 		if (modbusRemove != null && commandExists(device, modbusRemove))
 			executeCommand(device, modbusRemove, modbusRemoveArgs);
-		driver.disconnectDevice(device.getAddressable());
+		driver.disconnectDevice(device.getName(), device.getAddressable());
+		lanes.remove(device.getName());
+		breakers.remove(device.getName());
+		responseTimeouts.remove(device.getName());
+		illegalRanges.remove(device.getName());
+		statusUpdater.remove(device.getName());
+		publishFilter.remove(device.getName());
+		aggregator.remove(device.getName());
 		logger.info("Disconnected Device: " + device.getName());
 	}
 
@@ -120,44 +194,192 @@ public class ModbusHandler {
 	}
 
 	public Map<String, String> executeCommand(ModbusDevice device, String cmd, String arguments) {
+		try {
+			return executeCommandAsync(device, cmd, arguments).get();
+		} catch (InterruptedException e) {
+			// Exit quietly on break
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new ServiceException(e.getCause());
+		}
+	}
+
+	// dispatch the operations of a command and return without waiting for them;
+	// the future completes on the thread that finishes the last operation
+	public CompletableFuture<Map<String, String>> executeCommandAsync(ModbusDevice device, String cmd,
+			String arguments) {
 		// set immediate flag to false to read from object cache of last readings
 		Boolean immediate = true;
 		Transaction transaction = new Transaction();
 		String transactionId = transaction.getTransactionId();
 		transactions.put(transactionId, transaction);
-		executeOperations(device, cmd, arguments, immediate, transactionId);
-
-		synchronized (transactions) {
-			while (!transactions.get(transactionId).isFinished()) {
-				try {
-					transactions.wait();
-				} catch (InterruptedException e) {
-					// Exit quietly on break
-					return null;
-				}
+		long timeout = getCommandTimeout(cmd);
+
+		try {
+			executeOperations(device, cmd, arguments, immediate, transactionId);
+		} catch (RuntimeException e) {
+			transactions.remove(transactionId);
+			throw e;
+		}
+		transaction.seal();
+
+		ScheduledFuture<?> timer = dispatcher.schedule(() -> {
+			if (!transaction.isFinished()) {
+				logger.error("Command " + cmd + " for device " + device.getName() + " timed out after " + timeout
+						+ "ms");
+				transaction.fail(new CommandTimeoutException(
+						"Command " + cmd + " for device " + device.getName() + " timed out after " + timeout + "ms"));
+			}
+		}, timeout);
+
+		return transaction.getFuture().whenComplete((readings, e) -> {
+			timer.cancel(false);
+			transactions.remove(transactionId);
+		}).thenCompose(readings -> sendTransaction(device.getName(), readings, transaction.getLocalReadings()));
+	}
+
+	private long getCommandTimeout(String cmd) {
+		return environment.getProperty("modbus.command.timeout." + cmd, Long.class, commandTimeout);
+	}
+
+	// whether the command an operation belongs to is still waiting for it
+	public boolean isPending(String transactionId) {
+		Transaction transaction = transactions.get(transactionId);
+		return transaction != null && !transaction.isFinished();
+	}
+
+	// only readings this command read from the device are published, local
+	// ones were published by the read that produced them
+	public CompletableFuture<Map<String, String>> sendTransaction(String deviceName, List<Reading> readings,
+			List<Reading> localReadings) {
+		CompletableFuture<List<ResponseObject>> sent = readings.isEmpty()
+				? CompletableFuture.completedFuture(new ArrayList<ResponseObject>())
+				: processor.sendCoreData(deviceName, readings, profiles.getObjects().get(deviceName));
+		return sent.thenApply(resps -> {
+			Map<String, String> valueDescriptorMap = new LinkedHashMap<String, String>();
+			for (ResponseObject obj : resps)
+				valueDescriptorMap.put(obj.getName(), obj.getValue());
+			for (Reading reading : localReadings)
+				valueDescriptorMap.put(reading.getName(), reading.getValue());
+			return valueDescriptorMap;
+		});
+	}
+
+	private void executeOperations(ModbusDevice device, String commandName, String arguments, Boolean immediate,
+			String transactionId) {
+		List<ResourceOperation> reads = new ArrayList<>();
+		List<ModbusResourcePlan> readResources = new ArrayList<>();
+
+		String method = (arguments == null) ? "get" : "set";
+		ModbusCommandPlan plan = profiles.getCommandPlan(device.getName(), commandName, method);
+		if (plan != null) {
+			for (ModbusOperationPlan step : plan.getOperations()) {
+				dispatch(device, step.isSet() ? "set" : "get", immediate, transactionId, step.getOperation(),
+						step.getResource(), arguments, reads, readResources);
 			}
-			if (transactions.get(transactionId).isFailed()) {
-				throw transactions.get(transactionId).getFailException();
+		} else {
+			executeOperations(device, commandName, arguments, immediate, transactionId, reads, readResources);
+		}
+
+		if (reads.size() == 1) {
+			submitRead(device, reads, readResources, transactionId,
+					(id, opId) -> driver.process(reads.get(0), device, readResources.get(0), null, id, opId));
+		} else if (!reads.isEmpty()) {
+			submitRead(device, reads, readResources, transactionId,
+					(id, opId) -> driver.processReads(reads, readResources, device, id, opId));
+		}
+	}
+
+	// run a read on the device's lane or join the identical read already in
+	// flight. The read runs as a transaction of its own whose readings finish
+	// the operation of every command that joined it.
+	private void submitRead(ModbusDevice device, List<ResourceOperation> operations,
+			List<ModbusResourcePlan> resources, String transactionId, BiConsumer<String, String> read) {
+		String opId = transactions.get(transactionId).newOpId();
+		if (!singleFlight) {
+			lanes.submit(device.getName(), () -> read.accept(transactionId, opId));
+			return;
+		}
+
+		String key = getFlightKey(device, operations, resources);
+		Transaction created = new Transaction();
+		Transaction flight = flights.putIfAbsent(key, created);
+		if (flight == null) {
+			flight = created;
+			String flightId = created.getTransactionId();
+			String flightOpId = created.newOpId();
+			created.seal();
+			transactions.put(flightId, created);
+			// a read whose lane task is dropped, such as when the device is
+			// removed, would otherwise hold the key and its joiners forever
+			ScheduledFuture<?> timer = dispatcher.schedule(() -> {
+				if (!created.isFinished()) {
+					logger.error("Read of " + key + " timed out after " + commandTimeout + "ms");
+					created.fail(new CommandTimeoutException(
+							"Read of device " + device.getName() + " timed out after " + commandTimeout + "ms"));
+				}
+			}, commandTimeout);
+			created.getFuture().whenComplete((readings, e) -> {
+				timer.cancel(false);
+				flights.remove(key, created);
+				transactions.remove(flightId);
+			});
+			flightsStarted.incrementAndGet();
+			try {
+				lanes.submit(device.getName(), () -> read.accept(flightId, flightOpId));
+			} catch (RuntimeException e) {
+				created.fail(e);
+				throw e;
 			}
+		} else {
+			flightsJoined.incrementAndGet();
+			logger.debug("Joining read of " + key + " already in flight");
 		}
 
-		List<Reading> readings = transactions.get(transactionId).getReadings();
-		transactions.remove(transactionId);
+		// only the command that started the read publishes its readings
+		boolean publish = flight == created;
+		flight.getFuture().whenComplete((readings, e) -> {
+			if (e == null) {
+				completeTransaction(transactionId, opId, readings, publish);
+			} else {
+				failTransaction(transactionId,
+						e instanceof RuntimeException ? (RuntimeException) e : new ServiceException(e));
+			}
+		});
+	}
 
-		return sendTransaction(device.getName(), readings);
+	// device and resolved resources, together with the objects the readings are
+	// reported for
+	private String getFlightKey(ModbusDevice device, List<ResourceOperation> operations,
+			List<ModbusResourcePlan> resources) {
+		StringBuilder key = new StringBuilder(device.getName());
+		for (int i = 0; i < resources.size(); i++) {
+			ModbusResourcePlan resource = resources.get(i);
+			ResourceOperation operation = operations.get(i);
+			key.append('|').append(resource.getName()).append('@').append(resource.getAddress()).append(':')
+					.append(operation.getObject()).append(':').append(operation.getParameter()).append(':')
+					.append(operation.getSecondary());
+		}
+		return key.toString();
 	}
 
-	public Map<String, String> sendTransaction(String deviceName, List<Reading> readings) {
-		Map<String, String> valueDescriptorMap = new LinkedHashMap<String, String>();
-		List<ResponseObject> resps = processor.sendCoreData(deviceName, readings,
-				profiles.getObjects().get(deviceName));
-		for (ResponseObject obj : resps)
-			valueDescriptorMap.put(obj.getName(), obj.getValue());
-		return valueDescriptorMap;
+	public Map<String, Object> getReadStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("inFlight", flights.size());
+		statistics.put("started", flightsStarted.get());
+		statistics.put("joined", flightsJoined.get());
+		statistics.put("fresh", freshHits.get());
+		return statistics;
 	}
 
+	// walk the profile for commands that have no compiled plan, reporting why
+	// the command cannot be executed
 	private void executeOperations(ModbusDevice device, String commandName, String arguments, Boolean immediate,
-			String transactionId) {
+			String transactionId, List<ResourceOperation> reads, List<ModbusResourcePlan> readResources) {
 		String method = (arguments == null) ? "get" : "set";
 
 		String deviceName = device.getName();
@@ -173,36 +395,70 @@ public class ModbusHandler {
 			String opResource = operation.getResource();
 			if (opResource != null) {
 				if (operation.getOperation().equals("get")) {
-					executeOperations(device, opResource, null, immediate, transactionId);
+					executeOperations(device, opResource, null, immediate, transactionId, reads, readResources);
 				} else {
-					executeOperations(device, opResource, arguments, immediate, transactionId);
+					executeOperations(device, opResource, arguments, immediate, transactionId, reads, readResources);
 				}
 				continue;
 			}
 
 			String objectName = operation.getObject();
-			ModbusObject object = getModbusObject(objects, objectName, transactionId);
+			getModbusObject(objects, objectName, transactionId);
+			ModbusResourcePlan resource = profiles.getResourcePlans().get(deviceName).get(objectName);
 
 			// TODO Add property flexibility
 			if (!operation.getProperty().equals("value"))
 				throw new ServiceException(
 						new UnsupportedOperationException("Only property of value is implemented for this service!"));
 
-			String val = null;
-
-			if (method.equals("set") && object.getProperties() != null)
-				val = parseArguments(arguments, operation, device, object, objects);
+			dispatch(device, method, immediate, transactionId, operation, resource, arguments, reads, readResources);
+		}
+	}
 
-			// command operation for client processing
-			if (requiresQuery(immediate, method, device, operation)) {
+	// command operation for client processing; reads that can be coalesced into
+	// block requests are collected into reads and readResources, every other
+	// operation is dispatched on its own
+	private void dispatch(ModbusDevice device, String method, Boolean immediate, String transactionId,
+			ResourceOperation operation, ModbusResourcePlan resource, String arguments,
+			List<ResourceOperation> reads, List<ModbusResourcePlan> readResources) {
+		if (requiresQuery(immediate, method, device, operation)) {
+			if (method.equals("get") && freshness > 0) {
+				List<Reading> fresh = objectCache.getResponses(device, operation, freshness);
+				if (fresh != null) {
+					freshHits.incrementAndGet();
+					completeTransaction(transactionId, transactions.get(transactionId).newOpId(), fresh, false);
+					return;
+				}
+			}
+			if (isCoalescable(method, resource)) {
+				reads.add(operation);
+				readResources.add(resource);
+				return;
+			}
+			if (method.equals("get")) {
+				submitRead(device, Collections.singletonList(operation), Collections.singletonList(resource),
+						transactionId, (id, opId) -> driver.process(operation, device, resource, null, id, opId));
+				return;
+			}
+			boolean hasValue = resource.getObject().getProperties() != null;
+			if (hasValue && resource.getBitField().isMasked()) {
+				UnaryOperator<String> mask = parseMaskedArguments(arguments, operation, device, resource);
 				String opId = transactions.get(transactionId).newOpId();
-				final String parameter = val;
-				new Thread(() -> driver.process(operation, device, object, parameter, transactionId, opId)).start();
-				;
+				lanes.submit(device.getName(),
+						() -> driver.processMasked(operation, device, resource, mask, transactionId, opId));
+				return;
 			}
+			String val = hasValue ? parseArguments(arguments, operation, resource) : null;
+			String opId = transactions.get(transactionId).newOpId();
+			lanes.submit(device.getName(),
+					() -> driver.process(operation, device, resource, val, transactionId, opId));
 		}
 	}
 
+	private boolean isCoalescable(String method, ModbusResourcePlan resource) {
+		return coalesceReads && method.equals("get") && !resource.isBlock();
+	}
+
 	private Boolean requiresQuery(boolean immediate, String method, Device device, ResourceOperation operation) {
 		// if the immediate flag is set
 		if (immediate)
@@ -255,32 +511,51 @@ public class ModbusHandler {
 		return resource.get(method);
 	}
 
-	private String parseArguments(String arguments, ResourceOperation operation, ModbusDevice device,
-			ModbusObject object, Map<String, ModbusObject> objects) {
-		PropertyValue value = object.getProperties().getValue();
-		String val = parseArg(arguments, operation, value, operation.getParameter());
-
-		// if the written value is on a multiplexed handle, read the current value and
-		// apply the mask first
-		if (!value.mask().equals(BigInteger.ZERO)) {
-			String result = driver.processCommand("get", device.getAddressable(), object, val, device);
-			val = objectTransform.maskedValue(value, val, result);
-			if (operation.getSecondary() != null) {
-				for (String secondary : operation.getSecondary()) {
-					if (objects.get(secondary) != null) {
-						PropertyValue secondaryValue = objects.get(secondary).getProperties().getValue();
-						String secondVal = parseArg(arguments, operation, secondaryValue, secondary);
-						val = objectTransform.maskedValue(secondaryValue, secondVal, "0x" + val);
-					}
+	private String parseArguments(String arguments, ResourceOperation operation, ModbusResourcePlan resource) {
+		PropertyValue value = resource.getObject().getProperties().getValue();
+		return pad(parseArg(arguments, operation, resource, operation.getParameter()), value);
+	}
+
+	// the written value of a multiplexed handle is merged into the handle's
+	// current value, along with the secondary resources sharing it; the
+	// arguments are parsed now, the merge waits for the current value
+	private UnaryOperator<String> parseMaskedArguments(String arguments, ResourceOperation operation,
+			ModbusDevice device, ModbusResourcePlan resource) {
+		PropertyValue value = resource.getObject().getProperties().getValue();
+		String val = parseArg(arguments, operation, resource, operation.getParameter());
+		List<ModbusResourcePlan> secondaryResources = new ArrayList<>();
+		List<String> secondaryVals = new ArrayList<>();
+		if (operation.getSecondary() != null) {
+			Map<String, ModbusResourcePlan> resources = profiles.getResourcePlans().get(device.getName());
+			for (String secondary : operation.getSecondary()) {
+				ModbusResourcePlan secondaryResource = resources.get(secondary);
+				if (secondaryResource != null) {
+					secondaryResources.add(secondaryResource);
+					secondaryVals.add(parseArg(arguments, operation, secondaryResource, secondary));
 				}
 			}
 		}
+		return current -> {
+			String masked = objectTransform.maskedValue(value, resource.getBitField(), val, current);
+			for (int i = 0; i < secondaryResources.size(); i++) {
+				ModbusResourcePlan secondaryResource = secondaryResources.get(i);
+				PropertyValue secondaryValue = secondaryResource.getObject().getProperties().getValue();
+				masked = objectTransform.maskedValue(secondaryValue, secondaryResource.getBitField(),
+						secondaryVals.get(i), "0x" + masked);
+			}
+			return pad(masked, value);
+		};
+	}
+
+	private String pad(String val, PropertyValue value) {
 		while (val.length() < value.size())
 			val = "0" + val;
 		return val;
 	}
 
-	private String parseArg(String arguments, ResourceOperation operation, PropertyValue value, String object) {
+	private String parseArg(String arguments, ResourceOperation operation, ModbusResourcePlan resource,
+			String object) {
+		PropertyValue value = resource.getObject().getProperties().getValue();
 		// parse the argument string and get the "value" parameter
 		JsonObject args;
 		String val = null;
@@ -322,25 +597,26 @@ public class ModbusHandler {
 			passed = false;
 		}
 
-		if (!value.mask().equals(BigInteger.ZERO) && passed) {
-			val = objectTransform.format(value, val);
+		if (resource.getBitField().isMasked() && passed) {
+			val = objectTransform.format(value, resource.getBitField(), val);
 		}
 
 		return val;
 	}
 
 	public void completeTransaction(String transactionId, String opId, List<Reading> readings) {
-		synchronized (transactions) {
-			transactions.get(transactionId).finishOp(opId, readings);
-			transactions.notifyAll();
-		}
+		completeTransaction(transactionId, opId, readings, true);
+	}
+
+	public void completeTransaction(String transactionId, String opId, List<Reading> readings, boolean publish) {
+		Transaction transaction = transactions.get(transactionId);
+		if (transaction != null)
+			transaction.finishOp(opId, readings, publish);
 	}
 
 	public void failTransaction(String transactionId, RuntimeException e) {
-		synchronized (transactions) {
-			transactions.get(transactionId).setFailed();
-			transactions.get(transactionId).setFailException(e);
-			transactions.notifyAll();
-		}
+		Transaction transaction = transactions.get(transactionId);
+		if (transaction != null)
+			transaction.fail(e);
 	}
 }
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.handler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.edgexfoundry.exception.ServiceOverloadedException;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Runs device operations off the request thread. By default a bounded pool
+// with a bounded queue is used; with modbus.dispatch.mode=virtual each
+// operation gets its own virtual thread when the JVM provides them, limited
+// to a maximum number in flight. Operations beyond either limit are rejected
+// so the caller sees the service as unavailable instead of exhausting threads.
+@Service
+public class OperationDispatcher {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(OperationDispatcher.class);
+
+	// pool or virtual
+	@Value("${modbus.dispatch.mode:pool}")
+	private String mode;
+
+	@Value("${modbus.dispatch.threads:16}")
+	private int threads;
+
+	// operations waiting for a pool thread before new ones are rejected
+	@Value("${modbus.dispatch.queue.size:1000}")
+	private int queueSize;
+
+	// operations running on virtual threads before new ones are rejected
+	@Value("${modbus.dispatch.virtual.max:10000}")
+	private int maxVirtual;
+
+	private ExecutorService executor;
+	private ThreadPoolExecutor pool;
+	private Semaphore virtualPermits;
+
+	// runs short timer tasks such as command timeouts, never device I/O
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "modbus-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	@PostConstruct
+	public void start() {
+		if ("virtual".equalsIgnoreCase(mode)) {
+			try {
+				executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+						.invoke(null);
+				virtualPermits = new Semaphore(maxVirtual);
+				logger.info("Dispatching device operations on virtual threads, at most " + maxVirtual);
+				return;
+			} catch (ReflectiveOperationException e) {
+				logger.warn("Virtual threads are not available on this JVM, using a pool of " + threads
+						+ " threads instead");
+			}
+		}
+
+		AtomicInteger count = new AtomicInteger();
+		pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), runnable -> {
+					Thread thread = new Thread(runnable, "modbus-op-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		pool.allowCoreThreadTimeOut(true);
+		executor = pool;
+		logger.info("Dispatching device operations on " + threads + " threads with a queue of " + queueSize);
+	}
+
+	@PreDestroy
+	public void stop() {
+		timer.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	public ScheduledFuture<?> schedule(Runnable task, long delay) {
+		return timer.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	public void dispatch(Runnable operation) {
+		if (virtualPermits != null && !virtualPermits.tryAcquire()) {
+			throw reject();
+		}
+		try {
+			executor.execute(() -> run(operation));
+		} catch (RejectedExecutionException e) {
+			if (virtualPermits != null) {
+				virtualPermits.release();
+			}
+			throw reject();
+		}
+	}
+
+	private void run(Runnable operation) {
+		active.incrementAndGet();
+		try {
+			operation.run();
+		} catch (RuntimeException e) {
+			logger.error("Device operation failed: " + e.getMessage());
+			logger.debug(e.getMessage(), e);
+		} finally {
+			active.decrementAndGet();
+			completed.incrementAndGet();
+			if (virtualPermits != null) {
+				virtualPermits.release();
+			}
+		}
+	}
+
+	private ServiceOverloadedException reject() {
+		rejected.incrementAndGet();
+		logger.warn("Rejected device operation, " + active.get() + " active and " + getQueued() + " queued");
+		return new ServiceOverloadedException("Too many device operations in progress, try again later");
+	}
+
+	private int getQueued() {
+		if (pool != null) {
+			return pool.getQueue().size();
+		}
+		return Math.max(0, maxVirtual - virtualPermits.availablePermits() - active.get());
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("mode", pool != null ? "pool" : "virtual");
+		statistics.put("active", active.get());
+		statistics.put("queued", getQueued());
+		statistics.put("completed", completed.get());
+		statistics.put("rejected", rejected.get());
+		return statistics;
+	}
+}
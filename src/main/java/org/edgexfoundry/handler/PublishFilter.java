@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.handler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.edgexfoundry.domain.ModbusAttribute;
+import org.edgexfoundry.domain.ModbusObject;
+import org.edgexfoundry.domain.ModbusReading;
+import org.edgexfoundry.domain.ReadingValue;
+import org.edgexfoundry.domain.core.Reading;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Report by exception: decides which readings of a poll are sent to core
+// data. A reading is compared with the last one published for its resource;
+// it is published when it moved beyond the deadband (absolute and/or percent
+// of the last published value, every band that is set must be exceeded) or,
+// with publishOnChange, when it changed at all. minPublishInterval holds back
+// readings published too soon after the last one and maxPublishInterval
+// publishes a reading regardless once that long has passed. Each resource
+// can set its own policy in its Modbus attributes.
+@Service
+public class PublishFilter {
+
+	@Value("${modbus.publish.deadband:0}")
+	private double deadband;
+
+	@Value("${modbus.publish.deadband.percent:0}")
+	private double deadbandPercent;
+
+	@Value("${modbus.publish.on.change:false}")
+	private boolean publishOnChange;
+
+	@Value("${modbus.publish.min.interval:0}")
+	private long minInterval;
+
+	@Value("${modbus.publish.max.interval:0}")
+	private long maxInterval;
+
+	// policy, last published value and time by device and resource
+	private final Map<String, Map<String, Published>> published = new ConcurrentHashMap<>();
+
+	private final AtomicLong passed = new AtomicLong();
+	private final AtomicLong suppressed = new AtomicLong();
+
+	public List<Reading> filter(String deviceName, List<Reading> readings, Map<String, ModbusObject> objects) {
+		Map<String, Published> last = published.computeIfAbsent(deviceName, name -> new ConcurrentHashMap<>());
+		List<Reading> result = new ArrayList<>(readings.size());
+		long now = System.currentTimeMillis();
+		for (Reading reading : readings) {
+			ModbusObject object = objects != null ? objects.get(reading.getName()) : null;
+			Published state = last.get(reading.getName());
+			// the policy is compiled again only when the profile object changed
+			if (state == null || state.object != object) {
+				state = new Published(object, new Policy(object != null ? object.getAttributes() : null));
+				last.put(reading.getName(), state);
+			}
+			if (!state.offer(ModbusReading.valueOf(reading), now)) {
+				suppressed.incrementAndGet();
+				continue;
+			}
+			passed.incrementAndGet();
+			result.add(reading);
+		}
+		return result;
+	}
+
+	public void remove(String deviceName) {
+		published.remove(deviceName);
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("published", passed.get());
+		statistics.put("suppressed", suppressed.get());
+		return statistics;
+	}
+
+	private class Policy {
+		private final double deadband;
+		private final double deadbandPercent;
+		private final boolean onChange;
+		private final long minInterval;
+		private final long maxInterval;
+
+		Policy(ModbusAttribute attributes) {
+			boolean set = attributes != null;
+			this.deadband = set && attributes.getDeadband() != null ? attributes.getDeadband()
+					: PublishFilter.this.deadband;
+			this.deadbandPercent = set && attributes.getDeadbandPercent() != null ? attributes.getDeadbandPercent()
+					: PublishFilter.this.deadbandPercent;
+			this.onChange = set && attributes.getPublishOnChange() != null ? attributes.getPublishOnChange()
+					: publishOnChange;
+			this.minInterval = set && attributes.getMinPublishInterval() != null
+					? attributes.getMinPublishInterval() : PublishFilter.this.minInterval;
+			this.maxInterval = set && attributes.getMaxPublishInterval() != null
+					? attributes.getMaxPublishInterval() : PublishFilter.this.maxInterval;
+		}
+
+		boolean isFiltering() {
+			return deadband > 0 || deadbandPercent > 0 || onChange || minInterval > 0;
+		}
+	}
+
+	// the last published value of a resource, numbers as a primitive
+	private static class Published {
+		private final ModbusObject object;
+		private final Policy policy;
+		private boolean published;
+		private boolean numeric;
+		private double number;
+		private String text;
+		private long time;
+
+		Published(ModbusObject object, Policy policy) {
+			this.object = object;
+			this.policy = policy;
+		}
+
+		// whether the value is published, and if so it becomes the last one
+		synchronized boolean offer(ReadingValue value, long now) {
+			boolean isNumber = isNumber(value);
+			double valueNumber = isNumber ? value.doubleValue() : 0;
+			if (published && policy.isFiltering() && !isDue(value, isNumber, valueNumber, now)) {
+				return false;
+			}
+			published = true;
+			numeric = isNumber;
+			number = valueNumber;
+			text = isNumber ? null : value.toString();
+			time = now;
+			return true;
+		}
+
+		// text is only read as a number when a deadband needs it
+		private boolean isNumber(ReadingValue value) {
+			if (value.getType() != ReadingValue.Type.TEXT) {
+				return true;
+			}
+			if (policy.deadband <= 0 && policy.deadbandPercent <= 0) {
+				return false;
+			}
+			try {
+				value.doubleValue();
+				return true;
+			} catch (NumberFormatException | NullPointerException e) {
+				return false;
+			}
+		}
+
+		private boolean isDue(ReadingValue value, boolean isNumber, double valueNumber, long now) {
+			long elapsed = now - time;
+			if (policy.maxInterval > 0 && elapsed >= policy.maxInterval) {
+				return true;
+			}
+			if (policy.minInterval > 0 && elapsed < policy.minInterval) {
+				return false;
+			}
+			boolean bands = policy.deadband > 0 || policy.deadbandPercent > 0;
+			if (!isNumber || !numeric) {
+				boolean changed = isNumber != numeric || !Objects.equals(value.toString(), text);
+				return !bands && !policy.onChange || changed;
+			}
+			double delta = Math.abs(valueNumber - number);
+			if (!bands) {
+				return !policy.onChange || delta != 0;
+			}
+			if (policy.deadband > 0 && delta <= policy.deadband) {
+				return false;
+			}
+			return policy.deadbandPercent <= 0 || delta > Math.abs(number) * policy.deadbandPercent / 100;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// The retry policies of the service: one for device operations, retried on
+// the device's lane, and one for events sent to core data. Device retries are
+// budgeted per device and per bus, core data retries per service.
+@Service
+public class RetryPolicies {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(RetryPolicies.class);
+
+	// attempts of a device operation, including the first one
+	@Value("${modbus.retry.attempts:3}")
+	private int attempts;
+
+	@Value("${modbus.retry.delay:50}")
+	private long delay;
+
+	@Value("${modbus.retry.max.delay:2000}")
+	private long maxDelay;
+
+	@Value("${modbus.retry.multiplier:2}")
+	private double multiplier;
+
+	@Value("${modbus.retry.jitter:0.5}")
+	private double jitter;
+
+	// retries per window for each device and each bus, 0 is unlimited
+	@Value("${modbus.retry.budget:20}")
+	private int budget;
+
+	@Value("${modbus.retry.budget.window:10000}")
+	private long budgetWindow;
+
+	// failures retried, anywhere in the cause chain
+	@Value("${modbus.retry.on:org.edgexfoundry.exception.DeviceUnreachableException,org.edgexfoundry.exception.DeviceBusyException,com.ghgande.j2mod.modbus.ModbusIOException,java.io.IOException}")
+	private String retryOn;
+
+	// failures never retried, such as Modbus exception responses; busy answers
+	// are exception responses too but retried as their own class is listed
+	@Value("${modbus.retry.never:org.edgexfoundry.exception.ModbusExceptionResponseException,com.ghgande.j2mod.modbus.ModbusSlaveException}")
+	private String retryNever;
+
+	// attempts of a core data event, 0 is unlimited
+	@Value("${service.connect.retries}")
+	private int coreDataAttempts;
+
+	@Value("${service.connect.wait}")
+	private long coreDataDelay;
+
+	@Value("${service.connect.max.wait:60000}")
+	private long coreDataMaxDelay;
+
+	@Value("${service.connect.multiplier:2}")
+	private double coreDataMultiplier;
+
+	private BackoffRetryPolicy devicePolicy;
+	private BackoffRetryPolicy coreDataPolicy;
+
+	@PostConstruct
+	public void init() {
+		devicePolicy = new BackoffRetryPolicy(attempts, delay, maxDelay, multiplier, jitter, budget, budgetWindow,
+				getClasses(retryOn), getClasses(retryNever));
+		coreDataPolicy = new BackoffRetryPolicy(coreDataAttempts, coreDataDelay, coreDataMaxDelay,
+				coreDataMultiplier, jitter, 0, 0, Collections.singletonList(Exception.class),
+				Collections.emptyList());
+	}
+
+	public RetryPolicy getDevicePolicy() {
+		return devicePolicy;
+	}
+
+	public RetryPolicy getCoreDataPolicy() {
+		return coreDataPolicy;
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("device", devicePolicy.getStatistics());
+		statistics.put("coreData", coreDataPolicy.getStatistics());
+		return statistics;
+	}
+
+	private List<Class<?>> getClasses(String names) {
+		List<Class<?>> classes = new ArrayList<>();
+		for (String name : Arrays.asList(names.split(","))) {
+			if (name.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				classes.add(Class.forName(name.trim()));
+			} catch (ClassNotFoundException e) {
+				logger.error("Unknown exception class in retry configuration: " + name.trim());
+			}
+		}
+		return classes;
+	}
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.handler;
+
+// Decides whether a failed attempt is made again and after how long
+public interface RetryPolicy {
+
+	// delay in milliseconds before the next attempt or -1 to give up; attempts
+	// is the number of attempts made so far, budgets the retry budgets (device,
+	// bus, service) the retry is drawn from
+	long getDelay(int attempts, Throwable failure, String... budgets);
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.edgexfoundry.domain.ModbusAttribute;
+import org.edgexfoundry.domain.ModbusObject;
+import org.edgexfoundry.domain.ModbusReading;
+import org.edgexfoundry.domain.ReadingValue;
+import org.edgexfoundry.domain.core.Reading;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Aggregates the readings of resources that declare an aggregateWindow in
+// their Modbus attributes instead of publishing every sample. A window is a
+// ring of panes of aggregateSlide milliseconds (one pane when it tumbles),
+// each a set of primitive accumulators fed the typed value of the reading,
+// so adding a sample neither parses nor allocates. When a pane closes the
+// panes of the window are published as <resource>_min, _max, _avg and _count
+// readings (or those listed in aggregates); these need value descriptors of
+// their own in core data.
+// Raw readings stay in the object cache and in command responses.
+@Service
+public class WindowAggregator {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(WindowAggregator.class);
+
+	private static final List<String> ALL = Arrays.asList("min", "max", "avg", "count");
+
+	@Autowired
+	private CoreDataMessageHandler processor;
+
+	// windows by device and resource
+	private final Map<String, Map<String, Window>> devices = new ConcurrentHashMap<>();
+
+	private final AtomicLong samples = new AtomicLong();
+	private final AtomicLong emitted = new AtomicLong();
+
+	// the readings that are not aggregated
+	public List<Reading> absorb(String deviceName, List<Reading> readings, Map<String, ModbusObject> objects) {
+		List<Reading> raw = null;
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < readings.size(); i++) {
+			Reading reading = readings.get(i);
+			ModbusObject object = objects != null ? objects.get(reading.getName()) : null;
+			ModbusAttribute attributes = object != null ? object.getAttributes() : null;
+			boolean aggregated = attributes != null && attributes.getAggregateWindow() != null
+					&& attributes.getAggregateWindow() > 0 && add(deviceName, reading, attributes, now);
+			if (aggregated && raw == null) {
+				raw = new ArrayList<>(readings.subList(0, i));
+			} else if (!aggregated && raw != null) {
+				raw.add(reading);
+			}
+		}
+		return raw != null ? raw : readings;
+	}
+
+	private boolean add(String deviceName, Reading reading, ModbusAttribute attributes, long now) {
+		// text values are not aggregated and are published as they are
+		ReadingValue value = ModbusReading.valueOf(reading);
+		if (value.getType() == ReadingValue.Type.TEXT) {
+			return false;
+		}
+		long length = attributes.getAggregateWindow();
+		long slide = attributes.getAggregateSlide() != null && attributes.getAggregateSlide() > 0
+				? Math.min(attributes.getAggregateSlide(), length) : length;
+
+		Map<String, Window> windows = devices.computeIfAbsent(deviceName, name -> new ConcurrentHashMap<>());
+		Window window = windows.get(reading.getName());
+		if (window == null || window.length != length || window.slide != slide) {
+			window = new Window(reading.getName(), length, slide,
+					attributes.getAggregates() != null ? attributes.getAggregates() : ALL, now);
+			windows.put(reading.getName(), window);
+		}
+		window.add(value.doubleValue());
+		samples.incrementAndGet();
+		return true;
+	}
+
+	@Scheduled(fixedDelayString = "${modbus.aggregate.tick:250}")
+	public void closeWindows() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, Map<String, Window>> device : devices.entrySet()) {
+			List<Reading> readings = new ArrayList<>();
+			for (Window window : device.getValue().values()) {
+				window.close(now, device.getKey(), readings);
+			}
+			if (!readings.isEmpty()) {
+				emitted.addAndGet(readings.size());
+				try {
+					processor.publish(device.getKey(), readings);
+				} catch (RuntimeException e) {
+					logger.error("Cannot publish aggregates of " + device.getKey() + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	public void remove(String deviceName) {
+		devices.remove(deviceName);
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		int windows = 0;
+		for (Map<String, Window> device : devices.values()) {
+			windows += device.size();
+		}
+		statistics.put("windows", windows);
+		statistics.put("samples", samples.get());
+		statistics.put("emitted", emitted.get());
+		return statistics;
+	}
+
+	private class Window {
+		private final long length;
+		private final long slide;
+		private final String[] names;
+		private final String[] functions;
+		private final double[] min;
+		private final double[] max;
+		private final double[] sum;
+		private final long[] count;
+		private int current;
+		private long paneEnd;
+
+		Window(String resource, long length, long slide, List<String> aggregates, long now) {
+			this.length = length;
+			this.slide = slide;
+			int panes = (int) Math.max(1, (length + slide - 1) / slide);
+			min = new double[panes];
+			max = new double[panes];
+			sum = new double[panes];
+			count = new long[panes];
+			for (int i = 0; i < panes; i++) {
+				reset(i);
+			}
+			functions = aggregates.toArray(new String[aggregates.size()]);
+			names = new String[functions.length];
+			for (int i = 0; i < functions.length; i++) {
+				names[i] = resource + "_" + functions[i];
+			}
+			// panes end on multiples of the slide so windows line up with the clock
+			paneEnd = (now / slide + 1) * slide;
+		}
+
+		synchronized void add(double value) {
+			if (value < min[current]) {
+				min[current] = value;
+			}
+			if (value > max[current]) {
+				max[current] = value;
+			}
+			sum[current] += value;
+			count[current]++;
+		}
+
+		synchronized void close(long now, String deviceName, List<Reading> readings) {
+			while (now >= paneEnd) {
+				double windowMin = Double.POSITIVE_INFINITY;
+				double windowMax = Double.NEGATIVE_INFINITY;
+				double windowSum = 0;
+				long windowCount = 0;
+				for (int i = 0; i < count.length; i++) {
+					if (count[i] > 0) {
+						windowMin = Math.min(windowMin, min[i]);
+						windowMax = Math.max(windowMax, max[i]);
+						windowSum += sum[i];
+						windowCount += count[i];
+					}
+				}
+				if (windowCount > 0) {
+					for (int i = 0; i < functions.length; i++) {
+						ReadingValue value = getValue(functions[i], windowMin, windowMax, windowSum, windowCount);
+						if (value != null) {
+							readings.add(processor.buildReading(names[i], value, deviceName));
+						}
+					}
+				}
+				current = (current + 1) % count.length;
+				reset(current);
+				paneEnd += slide;
+			}
+		}
+
+		private ReadingValue getValue(String function, double windowMin, double windowMax, double windowSum,
+				long windowCount) {
+			switch (function) {
+			case "min":
+				return ReadingValue.ofDouble(windowMin);
+			case "max":
+				return ReadingValue.ofDouble(windowMax);
+			case "avg":
+				return ReadingValue.ofDouble(windowSum / windowCount);
+			case "sum":
+				return ReadingValue.ofDouble(windowSum);
+			case "count":
+				return ReadingValue.ofLong(windowCount);
+			default:
+				return null;
+			}
+		}
+
+		private void reset(int pane) {
+			min[pane] = Double.POSITIVE_INFINITY;
+			max[pane] = Double.NEGATIVE_INFINITY;
+			sum[pane] = 0;
+			count[pane] = 0;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+// Per-device response timeouts derived from the observed round trips, the
+// way TCP derives its retransmission timeout: a smoothed round trip time plus
+// four times its mean deviation, kept within floor and ceiling. The floor of
+// a request is at least the time its request and response frames take on the
+// line plus a margin, so a slow serial line does not time out a long read.
+// The ceiling defaults to the timeout the connection is configured with,
+// which a device without samples gets, and every timeout doubles the device's
+// timeout until it answers again.
+@Service
+@Scope(BeanDefinition.SCOPE_SINGLETON)
+public class AdaptiveTimeouts {
+
+	// false keeps the connections' own timeouts
+	@Value("${modbus.timeout.adaptive:true}")
+	private boolean adaptive;
+
+	@Value("${modbus.timeout.floor:100}")
+	private long floor;
+
+	// added to the time the frames take on the line
+	@Value("${modbus.timeout.transfer.margin:50}")
+	private long margin;
+
+	// 0 is the connection's configured timeout
+	@Value("${modbus.timeout.ceiling:0}")
+	private long ceiling;
+
+	private final Map<String, Estimator> estimators = new ConcurrentHashMap<>();
+
+	boolean isAdaptive() {
+		return adaptive;
+	}
+
+	// timeout in milliseconds for the next request to the device over a
+	// connection configured with the given timeout, for frames taking
+	// transferMillis to send and receive
+	int getTimeout(String deviceName, long configured, long transferMillis) {
+		long limit = ceiling > 0 ? ceiling : configured;
+		if (deviceName == null) {
+			return (int) limit;
+		}
+		Estimator estimator = estimators.computeIfAbsent(deviceName, name -> new Estimator(limit));
+		synchronized (estimator) {
+			if (estimator.ceiling != limit) {
+				estimator.ceiling = limit;
+				estimator.timeout = estimator.bound(estimator.samples == 0 ? limit : estimator.timeout);
+			}
+			return (int) Math.min(limit, Math.max(estimator.timeout, transferMillis + margin));
+		}
+	}
+
+	// time in milliseconds the given bytes take on a serial line, with a start,
+	// a parity or second stop and a stop bit around every byte; 0 without a
+	// line speed
+	static long getTransferTime(int bytes, int baudRate) {
+		if (baudRate <= 0) {
+			return 0;
+		}
+		return (bytes * 11L * 1000 + baudRate - 1) / baudRate;
+	}
+
+	void onResponse(String deviceName, long roundTripMillis) {
+		if (deviceName == null) {
+			return;
+		}
+		Estimator estimator = estimators.get(deviceName);
+		if (estimator == null) {
+			return;
+		}
+		synchronized (estimator) {
+			if (estimator.samples == 0) {
+				estimator.smoothed = roundTripMillis;
+				estimator.deviation = roundTripMillis / 2.0;
+			} else {
+				estimator.deviation = 0.75 * estimator.deviation + 0.25 * Math.abs(estimator.smoothed - roundTripMillis);
+				estimator.smoothed = 0.875 * estimator.smoothed + 0.125 * roundTripMillis;
+			}
+			estimator.samples++;
+			estimator.timeout = estimator.bound(Math.round(estimator.smoothed + 4 * estimator.deviation));
+		}
+	}
+
+	void onTimeout(String deviceName) {
+		if (deviceName == null) {
+			return;
+		}
+		Estimator estimator = estimators.get(deviceName);
+		if (estimator == null) {
+			return;
+		}
+		synchronized (estimator) {
+			estimator.timeouts++;
+			estimator.timeout = estimator.bound(2 * estimator.timeout);
+		}
+	}
+
+	public void remove(String deviceName) {
+		estimators.remove(deviceName);
+	}
+
+	public Map<String, Object> getEstimates() {
+		Map<String, Object> estimates = new LinkedHashMap<>();
+		estimators.forEach((deviceName, estimator) -> {
+			Map<String, Object> device = new LinkedHashMap<>();
+			synchronized (estimator) {
+				device.put("smoothedRttMs", estimator.smoothed);
+				device.put("rttDeviationMs", estimator.deviation);
+				device.put("timeoutMs", estimator.timeout);
+				device.put("samples", estimator.samples);
+				device.put("timeouts", estimator.timeouts);
+			}
+			estimates.put(deviceName, device);
+		});
+		return estimates;
+	}
+
+	private class Estimator {
+		private double smoothed;
+		private double deviation;
+		private long ceiling;
+		private long timeout;
+		private long samples;
+		private long timeouts;
+
+		Estimator(long ceiling) {
+			this.ceiling = ceiling;
+			this.timeout = ceiling;
+		}
+
+		private long bound(long timeout) {
+			return Math.min(ceiling, Math.max(floor, timeout));
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+
+// The response to a request sent on a ModbusChannel, stamped with when its
+// frame went out and when the answer came back so the round trip leaves out
+// the time the request spent queued behind others on the channel.
+class ChannelResponse extends CompletableFuture<ModbusResponse> {
+
+	private volatile long writtenAt;
+	private volatile long answeredAt;
+
+	void onWritten() {
+		writtenAt = System.nanoTime();
+	}
+
+	void onAnswered() {
+		answeredAt = System.nanoTime();
+	}
+
+	// round trip in milliseconds of a response completed normally; responses
+	// without stamps count from the given start
+	static long getRoundTrip(CompletableFuture<?> response, long start) {
+		if (response instanceof ChannelResponse) {
+			ChannelResponse stamped = (ChannelResponse) response;
+			long written = stamped.writtenAt;
+			long answered = stamped.answeredAt;
+			if (written != 0 && answered != 0) {
+				return (answered - written) / 1000000;
+			}
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+}
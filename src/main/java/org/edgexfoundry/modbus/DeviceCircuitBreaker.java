@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.edgexfoundry.domain.meta.OperatingState;
+import org.edgexfoundry.handler.DeviceStatusUpdater;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+// Per-device circuit breaker over the outcome of the last operations. When the
+// share of failed operations reaches the threshold the circuit opens: the
+// device is reported DISABLED and its operations fail at once instead of
+// waiting out their timeouts on a shared line. Once open.duration has passed
+// one probe is let through (half-open); it closes the circuit and re-enables
+// the device, or opens it again.
+@Service
+@Scope(BeanDefinition.SCOPE_SINGLETON)
+public class DeviceCircuitBreaker {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(DeviceCircuitBreaker.class);
+
+	enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	@Value("${modbus.breaker.enabled:true}")
+	private boolean enabled;
+
+	// number of last operations the failure rate is taken over
+	@Value("${modbus.breaker.window:10}")
+	private int window;
+
+	// operations recorded before the failure rate is considered
+	@Value("${modbus.breaker.minimum.calls:5}")
+	private int minimumCalls;
+
+	// percentage of failed operations that opens the circuit
+	@Value("${modbus.breaker.failure.rate:50}")
+	private int failureRate;
+
+	@Value("${modbus.breaker.open.duration:30000}")
+	private long openDuration;
+
+	@Autowired
+	private DeviceStatusUpdater statusUpdater;
+
+	private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+	// false when the operation must fail without touching the device
+	public boolean allow(String deviceName) {
+		if (!enabled) {
+			return true;
+		}
+		Breaker breaker = getBreaker(deviceName);
+		synchronized (breaker) {
+			switch (breaker.state) {
+			case OPEN:
+				if (System.currentTimeMillis() < breaker.openedAt + openDuration) {
+					breaker.rejected++;
+					return false;
+				}
+				breaker.state = State.HALF_OPEN;
+				breaker.probing = true;
+				logger.info("Circuit of device " + deviceName + " half-open, probing");
+				return true;
+			case HALF_OPEN:
+				if (breaker.probing) {
+					breaker.rejected++;
+					return false;
+				}
+				breaker.probing = true;
+				return true;
+			default:
+				return true;
+			}
+		}
+	}
+
+	public void onSuccess(String deviceName) {
+		if (!enabled) {
+			return;
+		}
+		Breaker breaker = getBreaker(deviceName);
+		boolean closed = false;
+		synchronized (breaker) {
+			if (breaker.state == State.HALF_OPEN) {
+				breaker.state = State.CLOSED;
+				breaker.probing = false;
+				breaker.reset();
+				closed = true;
+			} else if (breaker.state == State.CLOSED) {
+				breaker.record(false);
+			}
+		}
+		if (closed) {
+			logger.info("Circuit of device " + deviceName + " closed");
+			setOperatingState(deviceName, OperatingState.ENABLED);
+		}
+	}
+
+	public void onFailure(String deviceName) {
+		if (!enabled) {
+			return;
+		}
+		Breaker breaker = getBreaker(deviceName);
+		boolean opened = false;
+		synchronized (breaker) {
+			if (breaker.state == State.HALF_OPEN) {
+				breaker.open();
+				logger.warn("Probe of device " + deviceName + " failed, circuit open again");
+			} else if (breaker.state == State.CLOSED) {
+				breaker.record(true);
+				if (breaker.calls >= Math.max(1, minimumCalls)
+						&& breaker.failures * 100 >= failureRate * breaker.calls) {
+					breaker.open();
+					opened = true;
+				}
+			}
+		}
+		if (opened) {
+			logger.warn("Circuit of device " + deviceName + " open for " + openDuration + "ms");
+			setOperatingState(deviceName, OperatingState.DISABLED);
+		}
+	}
+
+	// the operation ended without showing whether the device answers; a probe
+	// that ends so leaves the circuit open and due for the next probe
+	public void onNeutral(String deviceName) {
+		if (!enabled) {
+			return;
+		}
+		Breaker breaker = getBreaker(deviceName);
+		synchronized (breaker) {
+			if (breaker.state == State.HALF_OPEN) {
+				breaker.state = State.OPEN;
+				breaker.probing = false;
+			}
+		}
+	}
+
+	// open circuits whose probe is due, for devices no command reaches any more
+	List<String> getDueForProbe() {
+		List<String> due = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		breakers.forEach((deviceName, breaker) -> {
+			synchronized (breaker) {
+				if (breaker.state == State.OPEN && now >= breaker.openedAt + openDuration) {
+					due.add(deviceName);
+				}
+			}
+		});
+		return due;
+	}
+
+	public void remove(String deviceName) {
+		breakers.remove(deviceName);
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		breakers.forEach((deviceName, breaker) -> {
+			Map<String, Object> device = new LinkedHashMap<>();
+			synchronized (breaker) {
+				device.put("state", breaker.state.name());
+				device.put("calls", breaker.calls);
+				device.put("failures", breaker.failures);
+				device.put("opened", breaker.opened);
+				device.put("rejected", breaker.rejected);
+			}
+			statistics.put(deviceName, device);
+		});
+		return statistics;
+	}
+
+	private Breaker getBreaker(String deviceName) {
+		return breakers.computeIfAbsent(deviceName, name -> new Breaker(Math.max(1, window)));
+	}
+
+	private void setOperatingState(String deviceName, OperatingState state) {
+		statusUpdater.setOperatingState(deviceName, state);
+	}
+
+	private static class Breaker {
+		// outcomes of the last operations, true for a failure
+		private final boolean[] outcomes;
+		private int next;
+		private int calls;
+		private int failures;
+		private State state = State.CLOSED;
+		private boolean probing;
+		private long openedAt;
+		private long opened;
+		private long rejected;
+
+		Breaker(int window) {
+			outcomes = new boolean[window];
+		}
+
+		void record(boolean failure) {
+			if (calls == outcomes.length) {
+				if (outcomes[next]) {
+					failures--;
+				}
+			} else {
+				calls++;
+			}
+			outcomes[next] = failure;
+			if (failure) {
+				failures++;
+			}
+			next = (next + 1) % outcomes.length;
+		}
+
+		void open() {
+			state = State.OPEN;
+			probing = false;
+			openedAt = System.currentTimeMillis();
+			opened++;
+		}
+
+		void reset() {
+			next = 0;
+			calls = 0;
+			failures = 0;
+		}
+	}
+}
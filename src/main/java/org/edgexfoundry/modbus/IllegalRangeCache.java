@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+// Remembers, per device, the function and address ranges the device answered
+// with illegal function or illegal data address. Until an entry expires
+// requests overlapping it fail without going to the device and the read
+// planner keeps blocks clear of it.
+@Service
+@Scope(BeanDefinition.SCOPE_SINGLETON)
+public class IllegalRangeCache {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(IllegalRangeCache.class);
+
+	@Value("${modbus.illegal.range.cache:true}")
+	private boolean enabled;
+
+	@Value("${modbus.illegal.range.ttl:600000}")
+	private long ttl;
+
+	// ranges kept per device, the oldest is dropped beyond this
+	@Value("${modbus.illegal.range.max:64}")
+	private int maxPerDevice;
+
+	private final Map<String, List<Range>> devices = new ConcurrentHashMap<>();
+
+	private final AtomicLong recorded = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+
+	void record(String deviceName, int unitId, int functionCode, int address, int quantity,
+			ModbusExceptionCode code) {
+		if (!enabled || deviceName == null) {
+			return;
+		}
+		List<Range> ranges = devices.computeIfAbsent(deviceName, name -> new CopyOnWriteArrayList<>());
+		ranges.removeIf(range -> range.isExpired(System.currentTimeMillis())
+				|| range.matches(unitId, functionCode, address, address + quantity));
+		ranges.add(new Range(unitId, functionCode, address, quantity, code, System.currentTimeMillis() + ttl));
+		while (ranges.size() > maxPerDevice) {
+			ranges.remove(0);
+		}
+		recorded.incrementAndGet();
+		logger.warn("Device " + deviceName + " answered function " + functionCode + " at " + address + "+" + quantity
+				+ " of unit " + unitId + " with " + code + ", not requesting it again for " + ttl + "ms");
+	}
+
+	// the cached code of a range overlapping [start, end), or null
+	ModbusExceptionCode find(String deviceName, int unitId, int functionCode, int start, int end) {
+		List<Range> ranges = enabled && deviceName != null ? devices.get(deviceName) : null;
+		if (ranges == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		for (Range range : ranges) {
+			if (range.isExpired(now)) {
+				ranges.remove(range);
+			} else if (range.overlaps(unitId, functionCode, start, end)) {
+				return range.code;
+			}
+		}
+		return null;
+	}
+
+	// a request that was not sent because of a cached range
+	void onSkipped() {
+		skipped.incrementAndGet();
+	}
+
+	public void remove(String deviceName) {
+		devices.remove(deviceName);
+	}
+
+	public Map<String, Object> getDiagnostics() {
+		Map<String, Object> diagnostics = new LinkedHashMap<>();
+		diagnostics.put("recorded", recorded.get());
+		diagnostics.put("skipped", skipped.get());
+		long now = System.currentTimeMillis();
+		Map<String, List<Map<String, Object>>> ranges = new LinkedHashMap<>();
+		devices.forEach((deviceName, deviceRanges) -> {
+			List<Map<String, Object>> entries = new ArrayList<>();
+			for (Range range : deviceRanges) {
+				if (!range.isExpired(now)) {
+					Map<String, Object> entry = new LinkedHashMap<>();
+					entry.put("unitId", range.unitId);
+					entry.put("function", range.functionCode);
+					entry.put("address", range.start);
+					entry.put("quantity", range.end - range.start);
+					entry.put("exception", range.code.name());
+					entry.put("expiresIn", range.expiresAt - now);
+					entries.add(entry);
+				}
+			}
+			if (!entries.isEmpty()) {
+				ranges.put(deviceName, entries);
+			}
+		});
+		diagnostics.put("ranges", ranges);
+		return diagnostics;
+	}
+
+	private static class Range {
+		private final int unitId;
+		private final int functionCode;
+		private final int start;
+		private final int end;
+		private final ModbusExceptionCode code;
+		private final long expiresAt;
+
+		Range(int unitId, int functionCode, int start, int quantity, ModbusExceptionCode code, long expiresAt) {
+			this.unitId = unitId;
+			this.functionCode = functionCode;
+			this.start = start;
+			this.end = start + quantity;
+			this.code = code;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return now >= expiresAt;
+		}
+
+		// an illegal function applies to the whole table
+		boolean overlaps(int unitId, int functionCode, int start, int end) {
+			if (this.unitId != unitId || this.functionCode != functionCode) {
+				return false;
+			}
+			return code == ModbusExceptionCode.ILLEGAL_FUNCTION || (start < this.end && this.start < end);
+		}
+
+		boolean matches(int unitId, int functionCode, int start, int end) {
+			return this.unitId == unitId && this.functionCode == functionCode && this.start == start
+					&& this.end == end;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+
+// Modbus TCP framing: an MBAP header (transaction id, protocol id 0 and the
+// length of what follows) then the unit id, function code and data
+final class MbapCodec {
+
+	static final int HEADER_LENGTH = 6;
+
+	// largest Modbus TCP ADU
+	static final int MAX_FRAME_LENGTH = 260;
+
+	private MbapCodec() {
+	}
+
+	// whether a received header can start a response frame; anything else
+	// means the stream is out of step and the connection has to be reset
+	static boolean isValidHeader(int protocolId, int length) {
+		return protocolId == 0 && length >= 2 && HEADER_LENGTH + length <= MAX_FRAME_LENGTH;
+	}
+
+	static int getFrameLength(ModbusRequest request) {
+		return HEADER_LENGTH + 2 + request.getMessage().length;
+	}
+
+	static void encode(ByteBuffer target, int transactionId, ModbusRequest request) {
+		byte[] data = request.getMessage();
+		target.putShort((short) transactionId);
+		target.putShort((short) 0);
+		target.putShort((short) (data.length + 2));
+		target.put((byte) request.getUnitID());
+		target.put((byte) request.getFunctionCode());
+		target.put(data);
+	}
+
+	// frame holds what follows the MBAP header
+	static ModbusResponse decode(int transactionId, byte[] frame) throws ModbusException {
+		if (frame.length < 2) {
+			throw new ModbusIOException("Malformed response " + transactionId + " of " + frame.length + " bytes");
+		}
+		int unitId = frame[0] & 0xFF;
+		int functionCode = frame[1] & 0xFF;
+		if ((functionCode & 0x80) != 0) {
+			throw new ModbusSlaveException(frame.length > 2 ? frame[2] & 0xFF : 0);
+		}
+		try {
+			ModbusResponse response = ModbusResponse.createModbusResponse(functionCode);
+			response.setTransactionID(transactionId);
+			response.setUnitID(unitId);
+			response.readData(new DataInputStream(new ByteArrayInputStream(frame, 2, frame.length - 2)));
+			return response;
+		} catch (IOException e) {
+			throw new ModbusIOException("Malformed response " + transactionId + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+
+// A Modbus TCP connection that can have several requests outstanding, matched
+// to their responses by MBAP transaction id. A timeout of 0 or less stands for
+// the channel's configured timeout.
+interface ModbusChannel {
+
+	CompletableFuture<ModbusResponse> send(ModbusRequest request, long timeout) throws ModbusIOException;
+
+	ModbusResponse await(CompletableFuture<ModbusResponse> response, long timeout) throws ModbusException;
+
+	// the channel's configured response timeout in milliseconds
+	long getTimeout();
+
+	void close();
+}
@@ -19,25 +19,24 @@
  *******************************************************************************/
 package org.edgexfoundry.modbus;
 
-import java.net.InetAddress;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
-import org.edgexfoundry.domain.ModbusDevice;
-import org.edgexfoundry.domain.ModbusObject;
+import org.edgexfoundry.domain.ModbusResourcePlan;
+import org.edgexfoundry.domain.ReadingValue;
 import org.edgexfoundry.domain.meta.Addressable;
 import org.edgexfoundry.domain.meta.Protocol;
 import org.edgexfoundry.support.logging.client.EdgeXLogger;
 import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
-import com.ghgande.j2mod.modbus.net.SerialConnection;
 import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
-import com.ghgande.j2mod.modbus.util.SerialParameters;
 
 @Service
 @Scope(BeanDefinition.SCOPE_SINGLETON)
@@ -45,108 +44,102 @@ public class ModbusConnection {
 
 	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(ModbusConnection.class);
 
-	@Value("${modbus.rtu.timeout:3000}")
-	private int modbus_rtu_timeout;
-
 	@Autowired
 	private ModbusReadFunction readFunction;
 
 	@Autowired
 	private ModbusWriteFunction writeFunction;
 
+	@Autowired
+	private ModbusConnectionPool connectionPool;
+
+	@Autowired
+	private SerialBusManager serialBuses;
+
+	@Autowired
+	private ModbusPipelineManager pipelines;
+
+	@Autowired
+	private ModbusNioEngine nioEngine;
+
+	// TCP endpoint of every initialized device by device name, the shared
+	// sockets of an endpoint are only closed with the last device using it
+	private final Map<String, String> deviceEndpoints = new ConcurrentHashMap<>();
+
 	public ModbusConnection() {
 	}
 
-	public Object getModbusConnection(Addressable addressable) {
-		Object connection = null;
-		if (addressable.getProtocol() == Protocol.HTTP || addressable.getProtocol() == Protocol.TCP) {
-			logger.info("creating TCP connection");
-			connection = createTCPConnection(addressable);
+	// run an operation against the device's connection: TCP operations use the
+	// endpoint's NIO channel with the NIO engine, share its pipelined socket
+	// when pipelining is enabled for it or borrow a pooled connection on the
+	// calling thread, serial operations are queued on the bus that owns the port
+	public <T> T execute(Addressable addressable, boolean write, Function<Object, T> operation) {
+		if (isTCP(addressable) && nioEngine.isEnabled()) {
+			return operation.apply(nioEngine.getChannel(addressable));
+		} else if (isTCP(addressable) && pipelines.isPipelined(addressable)) {
+			return operation.apply(pipelines.getPipeline(addressable));
+		} else if (isTCP(addressable)) {
+			TCPMasterConnection connection = connectionPool.borrow(addressable);
+			try {
+				return operation.apply(connection);
+			} finally {
+				connectionPool.release(addressable, connection);
+			}
 		} else /* if(addressable.getProtocol() == Protocol.OTHER) */ {
-			connection = createSerialConnection(addressable);
+			int priority = write ? SerialBus.PRIORITY_WRITE : SerialBus.PRIORITY_READ;
+			return serialBuses.getBus(addressable).execute(priority, operation);
 		}
-		return connection;
 	}
 
-	private Object createSerialConnection(Addressable addressable) {
-		SerialConnection con = null;
-		try {
-			SerialParameters params = new SerialParameters();
-			String address = addressable.getAddress();
-			String[] serialParams = address.split(",");
-			if (serialParams.length > 0) {
-				if (serialParams[0] != null) {
-					params.setPortName(serialParams[0].trim());
-					logger.info("Port:" + serialParams[0].trim());
-				}
-				if (serialParams[1] != null) {
-					params.setBaudRate(Integer.parseInt(serialParams[1].trim()));
-					logger.info("BaudRate:" + serialParams[1].trim());
-				}
-				if (serialParams[2] != null) {
-
-					params.setDatabits(Integer.parseInt(serialParams[2].trim()));
-					logger.info("Data Bits:" + serialParams[2].trim());
-
-				}
-				if (serialParams[3] != null) {
-					params.setStopbits(Integer.parseInt(serialParams[3].trim()));
-					logger.info("Stop Bitse:" + serialParams[3].trim());
-
-				}
-				if (serialParams[4] != null) {
-					params.setParity(Integer.parseInt(serialParams[4].trim()));
-					logger.info("Parity:" + serialParams[4].trim());
-
-				}
-
-				params.setEncoding("rtu");
-				params.setEcho(false);
-			}
-			con = new SerialConnection(params);
-			con.setTimeout(modbus_rtu_timeout);
-			// con.open();
-			logger.info("Created Modbus RTU Connection for " + addressable.toString());
-		} catch (Exception e) {
-			logger.debug(e.getMessage(), e);
-			logger.error("Exception in creating Serial connection:" + e.getMessage());
+	public void openModbusConnections(String deviceName, Addressable addressable) {
+		if (isTCP(addressable)) {
+			deviceEndpoints.put(deviceName, getKey(addressable));
 		}
-		return con;
 	}
 
-	private Object createTCPConnection(Addressable addressable) {
-
-		TCPMasterConnection con = null;
-		try {
-			InetAddress addr = InetAddress.getByName(addressable.getAddress());
-			con = new TCPMasterConnection(addr);
-			con.setPort(addressable.getPort());
-			// con.connect();
-			logger.info("Created Modbus TCP Connection for " + addressable.toString());
-		} catch (Exception e) {
-			logger.debug(e.getMessage(), e);
-			logger.error("Exception in creating TCP connection:" + e);
+	// serial buses stay open as other units on the same line may still be in
+	// use, and so do the connections of a TCP endpoint other devices still use
+	public void closeModbusConnections(String deviceName, Addressable addressable) {
+		if (!isTCP(addressable)) {
+			return;
+		}
+		String key = getKey(addressable);
+		deviceEndpoints.remove(deviceName);
+		if (deviceEndpoints.containsValue(key)) {
+			logger.debug("Keeping the connections to " + key + " open for its other devices");
+			return;
 		}
-		return con;
+		connectionPool.close(addressable);
+		pipelines.close(addressable);
+		nioEngine.close(addressable);
+	}
+
+	private String getKey(Addressable addressable) {
+		return addressable.getAddress() + ":" + addressable.getPort();
+	}
+
+	private boolean isTCP(Addressable addressable) {
+		return addressable.getProtocol() == Protocol.HTTP || addressable.getProtocol() == Protocol.TCP;
+	}
+
+	public ReadingValue getValue(Object connection, ModbusResourcePlan plan) {
+		return readFunction.readValue(connection, plan);
 	}
 
-	public String getValue(Object connection, Addressable addressable, ModbusObject object, ModbusDevice device,
-			int retryCount) {
-		return readFunction.readValue(connection, addressable, object, device, retryCount);
+	public Map<String, ReadingValue> getValues(Object connection, ModbusResourcePlan plan) {
+		return readFunction.readValues(connection, plan);
 	}
 
-	public Map<String, String> getValues(Object connection, Addressable addressable, ModbusObject object,
-			ModbusDevice device, int retryCount) {
-		return readFunction.readValues(connection, addressable, object, device, retryCount);
+	Map<ModbusResourcePlan, ReadingValue> getBlocks(Object connection, List<ReadBlock> blocks) {
+		return readFunction.readBlocks(connection, blocks);
 	}
 
-	public String setValue(Object connection, Addressable addressable, ModbusObject object, String value,
-			ModbusDevice device, int retryCount) {
-		return writeFunction.writeValue(connection, addressable, object, value, device, retryCount);
+	public String setValue(Object connection, ModbusResourcePlan plan, String value) {
+		return writeFunction.writeValue(connection, plan, value);
 	}
 
-	public Map<String, String> setValues(Object connection, Addressable addressable, ModbusObject object,
-			Map<String, String> value, ModbusDevice device, int retryCount) {
+	public Map<String, ReadingValue> setValues(Object connection, ModbusResourcePlan plan,
+			Map<String, String> value) {
 		return new LinkedHashMap<>();
 	}
 }
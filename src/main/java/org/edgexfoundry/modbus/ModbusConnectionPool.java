@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.net.InetAddress;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.edgexfoundry.domain.meta.Addressable;
+import org.edgexfoundry.exception.DeviceUnreachableException;
+import org.edgexfoundry.exception.controller.ServiceException;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Scope;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+
+// Keeps Modbus TCP connections open across operations. Connections are pooled
+// per endpoint (address and port of the Addressable), so every unit behind the
+// same gateway shares the same sockets.
+@Service
+@Scope(BeanDefinition.SCOPE_SINGLETON)
+public class ModbusConnectionPool {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(ModbusConnectionPool.class);
+
+	// maximum number of connections (idle and borrowed) opened to one endpoint
+	@Value("${modbus.tcp.pool.max.per.endpoint:2}")
+	private int maxPerEndpoint;
+
+	// connections idle for longer than this are closed rather than reused
+	@Value("${modbus.tcp.pool.idle.timeout:60000}")
+	private long idleTimeout;
+
+	// idle connections older than this are reopened before reuse: a gateway
+	// may have dropped them without the socket noticing; 0 never reopens
+	@Value("${modbus.tcp.pool.validate.after:10000}")
+	private long validateAfter;
+
+	// how long a caller waits for a connection when the endpoint is at its maximum
+	@Value("${modbus.tcp.pool.borrow.timeout:5000}")
+	private long borrowTimeout;
+
+	private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong reopened = new AtomicLong();
+
+	public TCPMasterConnection borrow(Addressable addressable) {
+		String key = getKey(addressable);
+		Endpoint endpoint = endpoints.computeIfAbsent(key, k -> new Endpoint(maxPerEndpoint));
+
+		try {
+			if (!endpoint.permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+				throw new ServiceException(new IllegalStateException(
+						"No Modbus TCP connection available for " + key + " within " + borrowTimeout + "ms"));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException(e);
+		}
+
+		PooledConnection pooled;
+		while ((pooled = endpoint.idle.pollFirst()) != null) {
+			long now = System.currentTimeMillis();
+			if (isReusable(pooled, now)) {
+				hits.incrementAndGet();
+				if (validateAfter > 0 && now - pooled.lastUsed >= validateAfter) {
+					// the next transaction connects it again
+					reopened.incrementAndGet();
+					pooled.connection.close();
+				}
+				return pooled.connection;
+			}
+			evict(key, pooled.connection);
+		}
+
+		misses.incrementAndGet();
+		try {
+			return createConnection(addressable);
+		} catch (RuntimeException e) {
+			endpoint.permits.release();
+			throw e;
+		}
+	}
+
+	public void release(Addressable addressable, TCPMasterConnection connection) {
+		Endpoint endpoint = endpoints.get(getKey(addressable));
+		if (endpoint == null) {
+			connection.close();
+			return;
+		}
+		if (connection.isConnected()) {
+			endpoint.idle.offerFirst(new PooledConnection(connection, System.currentTimeMillis()));
+		} else {
+			evictions.incrementAndGet();
+		}
+		endpoint.permits.release();
+	}
+
+	public void invalidate(Addressable addressable, TCPMasterConnection connection) {
+		String key = getKey(addressable);
+		evict(key, connection);
+		Endpoint endpoint = endpoints.get(key);
+		if (endpoint != null) {
+			endpoint.permits.release();
+		}
+	}
+
+	public void close(Addressable addressable) {
+		String key = getKey(addressable);
+		Endpoint endpoint = endpoints.get(key);
+		if (endpoint != null) {
+			PooledConnection pooled;
+			while ((pooled = endpoint.idle.pollFirst()) != null) {
+				evict(key, pooled.connection);
+			}
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${modbus.tcp.pool.evict.interval:30000}")
+	public void evictIdle() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+			for (PooledConnection pooled : entry.getValue().idle) {
+				if (!isReusable(pooled, now) && entry.getValue().idle.removeFirstOccurrence(pooled)) {
+					evict(entry.getKey(), pooled.connection);
+				}
+			}
+		}
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("hits", hits.get());
+		statistics.put("misses", misses.get());
+		statistics.put("evictions", evictions.get());
+		statistics.put("reopened", reopened.get());
+		Map<String, Integer> idle = new LinkedHashMap<>();
+		endpoints.forEach((key, endpoint) -> idle.put(key, endpoint.idle.size()));
+		statistics.put("idle", idle);
+		return statistics;
+	}
+
+	// the idle timeout is checked first, an expired connection is not worth
+	// asking for its state
+	private boolean isReusable(PooledConnection pooled, long now) {
+		return now - pooled.lastUsed < idleTimeout && pooled.connection.isConnected();
+	}
+
+	private void evict(String key, TCPMasterConnection connection) {
+		evictions.incrementAndGet();
+		try {
+			connection.close();
+		} catch (Exception e) {
+			logger.debug("Closing evicted connection to " + key + " failed: " + e.getMessage());
+		}
+	}
+
+	private TCPMasterConnection createConnection(Addressable addressable) {
+		try {
+			InetAddress addr = InetAddress.getByName(addressable.getAddress());
+			TCPMasterConnection con = new TCPMasterConnection(addr);
+			con.setPort(addressable.getPort());
+			logger.info("Created Modbus TCP Connection for " + addressable.toString());
+			return con;
+		} catch (Exception e) {
+			logger.debug(e.getMessage(), e);
+			logger.error("Exception in creating TCP connection:" + e);
+			throw new DeviceUnreachableException(
+					"Cannot create a Modbus TCP connection to " + getKey(addressable) + ": " + e.getMessage());
+		}
+	}
+
+	private String getKey(Addressable addressable) {
+		return addressable.getAddress() + ":" + addressable.getPort();
+	}
+
+	private static class Endpoint {
+		private final Semaphore permits;
+		private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+
+		Endpoint(int maxConnections) {
+			permits = new Semaphore(maxConnections, true);
+		}
+	}
+
+	private static class PooledConnection {
+		private final TCPMasterConnection connection;
+		private final long lastUsed;
+
+		PooledConnection(TCPMasterConnection connection, long lastUsed) {
+			this.connection = connection;
+			this.lastUsed = lastUsed;
+		}
+	}
+}
@@ -19,22 +19,34 @@
  *******************************************************************************/
 package org.edgexfoundry.modbus;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.UnaryOperator;
 
 import org.edgexfoundry.data.DeviceStore;
 import org.edgexfoundry.data.ObjectStore;
 import org.edgexfoundry.data.ProfileStore;
 import org.edgexfoundry.domain.ModbusDevice;
-import org.edgexfoundry.domain.ModbusObject;
+import org.edgexfoundry.domain.ModbusResourcePlan;
+import org.edgexfoundry.domain.ReadingValue;
 import org.edgexfoundry.domain.ScanList;
+import org.edgexfoundry.domain.core.Reading;
 import org.edgexfoundry.domain.meta.Addressable;
+import org.edgexfoundry.domain.meta.Protocol;
 import org.edgexfoundry.domain.meta.ResourceOperation;
+import org.edgexfoundry.exception.DeviceUnreachableException;
+import org.edgexfoundry.exception.IllegalRangeSkippedException;
+import org.edgexfoundry.exception.ModbusExceptionResponseException;
 import org.edgexfoundry.exception.controller.ServiceException;
+import org.edgexfoundry.handler.DeviceLanes;
 import org.edgexfoundry.handler.ModbusHandler;
+import org.edgexfoundry.handler.OperationDispatcher;
+import org.edgexfoundry.handler.RetryPolicies;
 import org.edgexfoundry.support.logging.client.EdgeXLogger;
 import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -57,6 +69,24 @@ public class ModbusDriver {
 	@Autowired
 	ModbusConnection modbusConInstance;
 
+	@Autowired
+	ModbusReadPlanner planner;
+
+	@Autowired
+	DeviceCircuitBreaker breakers;
+
+	@Autowired
+	DeviceLanes lanes;
+
+	@Autowired
+	OperationDispatcher dispatcher;
+
+	@Autowired
+	RetryPolicies retries;
+
+	@Autowired
+	IllegalRangeCache illegalRanges;
+
 	public ScanList discover() {
 		ScanList scan = new ScanList();
 		return scan;
@@ -66,70 +96,278 @@ public class ModbusDriver {
 	// Device to be written to
 	// Modbus Object to be written to
 	// value is string to be written or null
-	public void process(ResourceOperation operation, ModbusDevice device, ModbusObject object, String value,
+	public void process(ResourceOperation operation, ModbusDevice device, ModbusResourcePlan resource, String value,
 			String transactionId, String opId) {
+		process(operation, device, resource, value, null, transactionId, opId, 1);
+	}
+
+	// write a masked bit field: the register it shares with other resources is
+	// read and written back with mask applied to its current value in the same
+	// operation, so both requests get the circuit breaker, retries and adaptive
+	// timeouts and no other operation on the device's lane comes between them
+	public void processMasked(ResourceOperation operation, ModbusDevice device, ModbusResourcePlan resource,
+			UnaryOperator<String> mask, String transactionId, String opId) {
+		process(operation, device, resource, null, mask, transactionId, opId, 1);
+	}
+
+	private void process(ResourceOperation operation, ModbusDevice device, ModbusResourcePlan resource, String value,
+			UnaryOperator<String> mask, String transactionId, String opId, int attempt) {
 
 		// TODO 2: [Optional] Modify this processCommand call to pass any
 		// additional
 		// required metadata from the profile to the driver stack
+		if (!handler.isPending(transactionId)) {
+			logger.debug("Skipping " + operation.getObject() + ", its command is no longer waiting");
+			return;
+		}
+		if (!breakers.allow(device.getName())) {
+			handler.failTransaction(transactionId, circuitOpen(device));
+			return;
+		}
 		try {
-			List<String> deviceResourceReferences = object.getAttributes().getDeviceResourceReferences();
-			if (deviceResourceReferences == null || deviceResourceReferences.isEmpty()) {
-				String result = processCommand(operation.getOperation(), device.getAddressable(), object, value,
-						device);
+			if (!resource.isBlock()) {
+				String written = mask == null ? value
+						: mask.apply(processCommand("get", device.getAddressable(), resource, null, device).toString());
+				ReadingValue result = processCommand(operation.getOperation(), device.getAddressable(), resource,
+						written, device);
 				logger.info("Putting result:" + result);
 				objectCache.putReadings(device, operation, result);
 			} else {
-				Map<String, String> result = processCommandWithMultipleValues(operation.getOperation(),
-						device.getAddressable(), object, null, device);
+				Map<String, ReadingValue> result = processCommandWithMultipleValues(operation.getOperation(),
+						device.getAddressable(), resource, null, device);
 				logger.info("Putting result:" + result);
 				objectCache.putReadings(device, operation, result);
 			}
+			breakers.onSuccess(device.getName());
 			
 			handler.completeTransaction(transactionId, opId, objectCache.getResponses(device, operation));
 		} catch (Exception e) {
+			recordFailure(device, e);
+			if (retry(device, transactionId, attempt, e,
+					() -> process(operation, device, resource, value, mask, transactionId, opId, attempt + 1))) {
+				return;
+			}
 			logger.error("ModbusDriver process Exception e:" + e.getMessage());
 			logger.debug(e.getMessage(), e);
-			handler.failTransaction(transactionId, new ServiceException(e));
-			Thread.currentThread().interrupt();
+			handler.failTransaction(transactionId, toFailure(e));
 		}
 
 	}
 
+	// read several resources of one device with coalesced block requests
+	public void processReads(List<ResourceOperation> operations, List<ModbusResourcePlan> resources,
+			ModbusDevice device, String transactionId, String opId) {
+		processReads(operations, resources, device, transactionId, opId, 1);
+	}
+
+	private void processReads(List<ResourceOperation> operations, List<ModbusResourcePlan> resources,
+			ModbusDevice device, String transactionId, String opId, int attempt) {
+		if (!handler.isPending(transactionId)) {
+			logger.debug("Skipping reads of " + device.getName() + ", their command is no longer waiting");
+			return;
+		}
+		if (!breakers.allow(device.getName())) {
+			handler.failTransaction(transactionId, circuitOpen(device));
+			return;
+		}
+		try {
+			Map<ModbusResourcePlan, ReadingValue> results = processReadBlocks(device.getAddressable(), resources, device);
+			breakers.onSuccess(device.getName());
+			List<Reading> readings = new ArrayList<>();
+			for (int i = 0; i < operations.size(); i++) {
+				ResourceOperation operation = operations.get(i);
+				ReadingValue result = results.get(resources.get(i));
+				if (result == null) {
+					logger.warn("No value for " + operation.getObject() + " of " + device.getName()
+							+ ", the device refused its address");
+					continue;
+				}
+				logger.info("Putting result:" + result);
+				objectCache.putReadings(device, operation, result);
+				readings.addAll(objectCache.getResponses(device, operation));
+			}
+
+			handler.completeTransaction(transactionId, opId, readings);
+		} catch (Exception e) {
+			recordFailure(device, e);
+			if (retry(device, transactionId, attempt, e,
+					() -> processReads(operations, resources, device, transactionId, opId, attempt + 1))) {
+				return;
+			}
+			logger.error("ModbusDriver process Exception e:" + e.getMessage());
+			logger.debug(e.getMessage(), e);
+			handler.failTransaction(transactionId, toFailure(e));
+		}
+	}
+
+	// schedule the next attempt of a failed operation back onto the device's
+	// lane instead of sleeping on it, false when the retry policy gives up
+	private boolean retry(ModbusDevice device, String transactionId, int attempt, Exception failure,
+			Runnable nextAttempt) {
+		long delay = retries.getDevicePolicy().getDelay(attempt, failure, device.getName(),
+				getBusKey(device.getAddressable()));
+		if (delay < 0) {
+			return false;
+		}
+		logger.warn("Attempt " + attempt + " on " + device.getName() + " failed, retrying in " + delay + "ms: "
+				+ failure.getMessage());
+		try {
+			dispatcher.schedule(() -> {
+				try {
+					lanes.submit(device.getName(), nextAttempt);
+				} catch (RuntimeException e) {
+					handler.failTransaction(transactionId, e);
+				}
+			}, delay);
+		} catch (RuntimeException e) {
+			return false;
+		}
+		return true;
+	}
+
+	// retries are budgeted per TCP endpoint or serial line as well as per device
+	private String getBusKey(Addressable addressable) {
+		if (addressable.getProtocol() == Protocol.HTTP || addressable.getProtocol() == Protocol.TCP) {
+			return addressable.getAddress() + ":" + addressable.getPort();
+		}
+		return addressable.getAddress().split(",")[0].trim();
+	}
+
+	// a device reported DISABLED gets no commands, so its open circuit is probed
+	// from here once it is due
+	@Scheduled(fixedDelayString = "${modbus.breaker.probe.interval:5000}")
+	public void probeOpenCircuits() {
+		for (String deviceName : breakers.getDueForProbe()) {
+			ModbusDevice device = devices.getModbusDevices().get(deviceName);
+			ModbusResourcePlan resource = getProbeResource(deviceName);
+			if (device == null || resource == null) {
+				continue;
+			}
+			try {
+				lanes.submit(deviceName, () -> probe(device, resource));
+			} catch (RuntimeException e) {
+				logger.debug("Cannot probe " + deviceName + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private void probe(ModbusDevice device, ModbusResourcePlan resource) {
+		if (!breakers.allow(device.getName())) {
+			return;
+		}
+		try {
+			processCommand("get", device.getAddressable(), resource, null, device);
+			breakers.onSuccess(device.getName());
+		} catch (Exception e) {
+			recordFailure(device, e);
+			logger.debug("Probe of " + device.getName() + " failed: " + e.getMessage());
+		}
+	}
+
+	// the first plain resource of the device that can be read on its own
+	private ModbusResourcePlan getProbeResource(String deviceName) {
+		Map<String, ModbusResourcePlan> resources = profiles.getResourcePlans().get(deviceName);
+		if (resources == null) {
+			return null;
+		}
+		for (ModbusResourcePlan resource : resources.values()) {
+			try {
+				if (!resource.isBlock() && resource.getValueType() != null && resource.getPrimaryTable() != null
+						&& !isRefused(deviceName, resource)) {
+					return resource;
+				}
+			} catch (RuntimeException e) {
+				continue;
+			}
+		}
+		return null;
+	}
+
+	// a probe must reach the device, so ranges it refused before are left out
+	private boolean isRefused(String deviceName, ModbusResourcePlan resource) {
+		return illegalRanges.find(deviceName, resource.getUnitId(),
+				ReadBlock.getReadFunctionCode(resource.getPrimaryTable()), resource.getAddress(),
+				resource.getAddress() + resource.getValueType().getLength()) != null;
+	}
+
+	// only a device that did not answer counts against its circuit, and only an
+	// exception response shows it is reachable; anything else, such as no
+	// pooled connection, a value that cannot be decoded or a range skipped
+	// because the device refused it before, says nothing about the device and
+	// is not recorded
+	private void recordFailure(ModbusDevice device, Exception e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+			if (cause instanceof IllegalRangeSkippedException) {
+				break;
+			}
+			if (cause instanceof DeviceUnreachableException) {
+				breakers.onFailure(device.getName());
+				return;
+			}
+			if (cause instanceof ModbusExceptionResponseException) {
+				breakers.onSuccess(device.getName());
+				return;
+			}
+		}
+		breakers.onNeutral(device.getName());
+	}
+
+	// typed failures reach the client as they are, their status is only read
+	// from the exception itself
+	private RuntimeException toFailure(Exception e) {
+		return e instanceof RuntimeException ? (RuntimeException) e : new ServiceException(e);
+	}
+
+	private DeviceUnreachableException circuitOpen(ModbusDevice device) {
+		logger.debug("Failing operation on " + device.getName() + ", its circuit is open");
+		return new DeviceUnreachableException("Device " + device.getName() + " is not responding, try again later");
+	}
+
+	public Map<ModbusResourcePlan, ReadingValue> processReadBlocks(Addressable addressable,
+			List<ModbusResourcePlan> resources, ModbusDevice device) {
+		List<ReadBlock> blocks = planner.plan(resources, device);
+		for (ReadBlock block : blocks) {
+			logger.info("ProcessCommand: get, addressable:" + addressable + ", block:" + block);
+		}
+		return modbusConInstance.execute(addressable, false,
+				connection -> modbusConInstance.getBlocks(connection, blocks));
+	}
+
 	// Modify this function as needed to pass necessary metadata from the device
 	// and
 	// its profile to the driver interface
-	public String processCommand(String operation, Addressable addressable, ModbusObject object, String value,
-			ModbusDevice device) {
-		logger.info("ProcessCommand: " + operation + ", addressable:" + addressable + ", attributes:"
-				+ object.getAttributes().toString() + ", value: " + value);
-		String result = "";
-		Object connection = modbusConInstance.getModbusConnection(addressable);
+	public ReadingValue processCommand(String operation, Addressable addressable, ModbusResourcePlan resource,
+			String value, ModbusDevice device) {
+		logger.info("ProcessCommand: " + operation + ", addressable:" + addressable + ", resource:" + resource
+				+ ", value: " + value);
+		ReadingValue result;
 		if (operation.toLowerCase().equals("get")) {
 			logger.info("Getting value");
-			result = modbusConInstance.getValue(connection, addressable, object, device, 0);
+			result = modbusConInstance.execute(addressable, false,
+					connection -> modbusConInstance.getValue(connection, resource));
 			logger.info("Getting value result finally:" + result);
 		} else {
 			logger.info("Setting value");
-			result = modbusConInstance.setValue(connection, addressable, object, value, device, 0);
+			result = ReadingValue.ofText(modbusConInstance.execute(addressable, true,
+					connection -> modbusConInstance.setValue(connection, resource, value)));
 		}
 		logger.info("Returning result:" + result);
 		return result;
 	}
 
-	public Map<String, String> processCommandWithMultipleValues(String operation, Addressable addressable,
-			ModbusObject object, Map<String, String> values, ModbusDevice device) {
-		logger.info("ProcessCommand: " + operation + ", addressable:" + addressable + ", attributes:"
-				+ object.getAttributes().toString());
-		Map<String, String> result;
-		Object connection = modbusConInstance.getModbusConnection(addressable);
+	public Map<String, ReadingValue> processCommandWithMultipleValues(String operation, Addressable addressable,
+			ModbusResourcePlan resource, Map<String, String> values, ModbusDevice device) {
+		logger.info("ProcessCommand: " + operation + ", addressable:" + addressable + ", resource:" + resource);
+		Map<String, ReadingValue> result;
 		if (operation.toLowerCase().equals("get")) {
 			logger.info("Getting value");
-			result = modbusConInstance.getValues(connection, addressable, object, device, 0);
+			result = modbusConInstance.execute(addressable, false,
+					connection -> modbusConInstance.getValues(connection, resource));
 			logger.info("Getting value result finally:" + result);
 		} else {
 			logger.info("Setting value");
-			result = modbusConInstance.setValues(connection, addressable, object, values, device, 0);
+			result = modbusConInstance.execute(addressable, true,
+					connection -> modbusConInstance.setValues(connection, resource, values));
 		}
 		logger.info("Returning result:" + result);
 		return result;
@@ -139,8 +377,12 @@ public class ModbusDriver {
 
 	}
 
-	public void disconnectDevice(Addressable address) {
+	public void connectDevice(String deviceName, Addressable address) {
+		modbusConInstance.openModbusConnections(deviceName, address);
+	}
 
+	public void disconnectDevice(String deviceName, Addressable address) {
+		modbusConInstance.closeModbusConnections(deviceName, address);
 	}
 
 	@SuppressWarnings("unused")
@@ -148,7 +390,7 @@ public class ModbusDriver {
 		// TODO 7: [Optional] Fill with your own implementation for handling
 		// asynchronous data from the driver layer to the device service
 		ModbusDevice device = null;
-		String result = "";
+		ReadingValue result = ReadingValue.ofText("");
 		ResourceOperation operation = null;
 
 		objectCache.putReadings(device, operation, result);
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+// Exception codes of Modbus exception responses (Modbus Application Protocol
+// V1.1b3, section 7)
+enum ModbusExceptionCode {
+
+	ILLEGAL_FUNCTION(0x01),
+	ILLEGAL_DATA_ADDRESS(0x02),
+	ILLEGAL_DATA_VALUE(0x03),
+	SLAVE_DEVICE_FAILURE(0x04),
+	ACKNOWLEDGE(0x05),
+	SLAVE_DEVICE_BUSY(0x06),
+	MEMORY_PARITY_ERROR(0x08),
+	GATEWAY_PATH_UNAVAILABLE(0x0A),
+	GATEWAY_TARGET_FAILED(0x0B),
+	UNKNOWN(-1);
+
+	private final int code;
+
+	private ModbusExceptionCode(int code) {
+		this.code = code;
+	}
+
+	int getCode() {
+		return code;
+	}
+
+	static ModbusExceptionCode of(int code) {
+		for (ModbusExceptionCode value : values()) {
+			if (value.code == code) {
+				return value;
+			}
+		}
+		return UNKNOWN;
+	}
+
+	// the function or the addresses are not supported by the device, asking again
+	// gives the same answer until its profile is fixed
+	boolean isIllegalRange() {
+		return this == ILLEGAL_FUNCTION || this == ILLEGAL_DATA_ADDRESS;
+	}
+
+	boolean isBusy() {
+		return this == ACKNOWLEDGE || this == SLAVE_DEVICE_BUSY;
+	}
+
+	// a gateway could not reach the device behind it
+	boolean isGatewayFailure() {
+		return this == GATEWAY_PATH_UNAVAILABLE || this == GATEWAY_TARGET_FAILED;
+	}
+}
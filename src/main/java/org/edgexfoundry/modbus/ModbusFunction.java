@@ -1,55 +1,169 @@
 package org.edgexfoundry.modbus;
 
-import org.edgexfoundry.data.ProfileStore;
-import org.edgexfoundry.domain.ModbusAttribute;
-import org.edgexfoundry.domain.ModbusDevice;
-import org.edgexfoundry.domain.ModbusObject;
-import org.edgexfoundry.domain.ModbusValueType;
-import org.edgexfoundry.domain.PrimaryTable;
-import org.edgexfoundry.exception.controller.DataValidationException;
+import java.util.concurrent.CompletableFuture;
+
+import org.edgexfoundry.domain.ModbusResourcePlan;
+import org.edgexfoundry.exception.DeviceBusyException;
+import org.edgexfoundry.exception.DeviceUnreachableException;
+import org.edgexfoundry.exception.IllegalRangeSkippedException;
+import org.edgexfoundry.exception.ModbusExceptionResponseException;
 import org.edgexfoundry.exception.controller.ServiceException;
-import org.edgexfoundry.support.logging.client.EdgeXLogger;
-import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
 
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
 import com.ghgande.j2mod.modbus.io.ModbusSerialTransaction;
 import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
 import com.ghgande.j2mod.modbus.io.ModbusTransaction;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.msg.ReadCoilsRequest;
+import com.ghgande.j2mod.modbus.msg.ReadInputDiscretesRequest;
+import com.ghgande.j2mod.modbus.msg.ReadInputRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
 import com.ghgande.j2mod.modbus.net.SerialConnection;
 import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
 
 abstract class ModbusFunction {
 
-	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(ModbusFunction.class);
+	@Autowired
+	protected AdaptiveTimeouts timeouts;
 
 	@Autowired
-	@Lazy
-	protected ProfileStore profileStore;
+	protected IllegalRangeCache illegalRanges;
+
+	@Autowired
+	protected SerialBusManager serialBuses;
+
+	// fail a request overlapping a range the device refused before instead of
+	// sending it again
+	protected void checkIllegalRange(String deviceName, ModbusRequest req, int address, int quantity) {
+		ModbusExceptionCode code = illegalRanges.find(deviceName, req.getUnitID(), req.getFunctionCode(), address,
+				address + quantity);
+		if (code != null) {
+			illegalRanges.onSkipped();
+			throw new IllegalRangeSkippedException("Device " + deviceName + " answered function "
+					+ req.getFunctionCode() + " at " + address + "+" + quantity + " with " + code
+					+ " before, not sending it again", code.getCode());
+		}
+	}
+
+	// the exception a Modbus exception response is reported as; illegal function
+	// and illegal address answers are cached for the requested range
+	protected RuntimeException toException(ModbusSlaveException e, String deviceName, ModbusRequest req, int address,
+			int quantity) {
+		ModbusExceptionCode code = ModbusExceptionCode.of(e.getType());
+		String message = "Device " + deviceName + " answered function " + req.getFunctionCode() + " at " + address
+				+ "+" + quantity + " with " + code;
+		if (code.isGatewayFailure()) {
+			return new DeviceUnreachableException(message);
+		}
+		if (code.isBusy()) {
+			return new DeviceBusyException(message, code.getCode());
+		}
+		if (code.isIllegalRange()) {
+			illegalRanges.record(deviceName, req.getUnitID(), req.getFunctionCode(), address, quantity, code);
+		}
+		return new ModbusExceptionResponseException(message, code.getCode());
+	}
 
-	protected ModbusValueType getModbusValueType(ModbusObject object) {
-		ModbusValueType propertyValueType;
+	// run one request on the connection and return its response; with adaptive
+	// timeouts the device's current timeout is applied to the request and its
+	// round trip is recorded, on a channel from when its frame was written
+	protected ModbusResponse executeRequest(Object connection, ModbusRequest req, String deviceName)
+			throws Exception {
+		int timeout = this.getTimeout(connection, req, deviceName);
+		long start = System.nanoTime();
+		CompletableFuture<ModbusResponse> sent = null;
 		try {
-			propertyValueType = ModbusValueType.valueOf(object.getProperties().getValue().getType());
-		} catch (Exception e) {
-			logger.error(e.getMessage(), e);
-			throw new DataValidationException(
-					"Modbus Value Type definition error. Please identify FLOAT32, FLOAT64, INT16, INT32, or INT64");
+			ModbusResponse response;
+			if (connection instanceof ModbusChannel) {
+				ModbusChannel channel = (ModbusChannel) connection;
+				sent = channel.send(req, timeout);
+				response = channel.await(sent, timeout);
+			} else {
+				response = this.executeTransaction(connection, req, timeout);
+			}
+			if (timeout > 0) {
+				timeouts.onResponse(deviceName, ChannelResponse.getRoundTrip(sent, start));
+			}
+			return response;
+		} catch (ModbusSlaveException e) {
+			if (timeout > 0) {
+				timeouts.onResponse(deviceName, ChannelResponse.getRoundTrip(sent, start));
+			}
+			throw e;
+		} catch (ModbusIOException e) {
+			if (timeout > 0) {
+				timeouts.onTimeout(deviceName);
+			}
+			throw e;
 		}
-		return propertyValueType;
 	}
 
-	protected PrimaryTable getPrimaryTable(ModbusObject object) {
-		PrimaryTable primaryTable;
+	private ModbusResponse executeTransaction(Object connection, ModbusRequest req, int timeout) throws Exception {
+		// the connection gets its configured timeout back for the next device
+		int configured = (int) getConfiguredTimeout(connection);
+		setConnectionTimeout(connection, timeout);
 		try {
-			primaryTable = PrimaryTable.valueOf(object.getAttributes().getPrimaryTable());
-		} catch (Exception e) {
-			logger.error(e.getMessage(), e);
-			throw new DataValidationException(
-					"Modbus Primary Table definition error. Please identify DISCRETES_INPUT, COILS, INPUT_REGISTERS, or HOLDING_REGISTER");
+			ModbusTransaction transaction = this.createModbusTransaction(connection, req);
+			transaction.execute();
+			return transaction.getResponse();
+		} finally {
+			setConnectionTimeout(connection, timeout > 0 ? configured : 0);
+		}
+	}
+
+	// the adaptive timeout of the request to the device, 0 for the connection's
+	// own; on a serial line it covers at least the time the request and its
+	// response take on the wire
+	protected int getTimeout(Object connection, ModbusRequest req, String deviceName) {
+		if (!timeouts.isAdaptive()) {
+			return 0;
+		}
+		long transfer = AdaptiveTimeouts.getTransferTime(getRtuRequestLength(req) + getRtuResponseLength(req),
+				serialBuses.getBaudRate(connection));
+		return timeouts.getTimeout(deviceName, getConfiguredTimeout(connection), transfer);
+	}
+
+	// unit id, function code and CRC around the request data
+	private int getRtuRequestLength(ModbusRequest req) {
+		byte[] data = req.getMessage();
+		return 4 + (data == null ? 0 : data.length);
+	}
+
+	// a normal response to the request; writes echo address and quantity
+	private int getRtuResponseLength(ModbusRequest req) {
+		if (req instanceof ReadMultipleRegistersRequest) {
+			return 5 + 2 * ((ReadMultipleRegistersRequest) req).getWordCount();
+		} else if (req instanceof ReadInputRegistersRequest) {
+			return 5 + 2 * ((ReadInputRegistersRequest) req).getWordCount();
+		} else if (req instanceof ReadCoilsRequest) {
+			return 5 + (((ReadCoilsRequest) req).getBitCount() + 7) / 8;
+		} else if (req instanceof ReadInputDiscretesRequest) {
+			return 5 + (((ReadInputDiscretesRequest) req).getBitCount() + 7) / 8;
+		}
+		return 8;
+	}
+
+	// the timeout the connection was set up with
+	protected long getConfiguredTimeout(Object connection) {
+		if (connection instanceof ModbusChannel) {
+			return ((ModbusChannel) connection).getTimeout();
+		} else if (connection instanceof TCPMasterConnection) {
+			return ((TCPMasterConnection) connection).getTimeout();
+		} else if (connection instanceof SerialConnection) {
+			return ((SerialConnection) connection).getTimeout();
+		}
+		return 0;
+	}
+
+	private void setConnectionTimeout(Object connection, int timeout) {
+		if (timeout > 0 && connection instanceof TCPMasterConnection) {
+			((TCPMasterConnection) connection).setTimeout(timeout);
+		} else if (timeout > 0 && connection instanceof SerialConnection) {
+			((SerialConnection) connection).setTimeout(timeout);
 		}
-		return primaryTable;
 	}
 
 	protected ModbusTransaction createModbusTransaction(Object connection, ModbusRequest req) throws Exception {
@@ -88,11 +202,11 @@ abstract class ModbusFunction {
 		}
 	}
 
-	protected byte[] swap32BitDataBytes(ModbusAttribute attributes, byte[] newDataBytes) {
-		if (attributes.isByteSwap()) {
+	protected byte[] swap32BitDataBytes(ModbusResourcePlan plan, byte[] newDataBytes) {
+		if (plan.isByteSwap()) {
 			newDataBytes = this.swapByteFor32Bit(newDataBytes);
 		}
-		if (!attributes.isWordSwap()) {
+		if (!plan.isWordSwap()) {
 			newDataBytes = this.swapWordFor32Bit(newDataBytes);
 		}
 		return newDataBytes;
@@ -120,16 +234,8 @@ abstract class ModbusFunction {
 		return newDataBytes;
 	}
 
-	protected int getReferencedAddress(ModbusObject object, ModbusDevice device) {
-		int startingAddress = object.getAttributes().getStartingAddress() - 1;
-		int baseAddress = 0;
-		if (device.getLocation() != null && device.getLocation().getBaseAddress() != null) {
-			baseAddress = device.getLocation().getBaseAddress();
-		}
-
-		return baseAddress + startingAddress;
-	}
-
+	// drop a connection after an I/O failure so the next transaction reconnects;
+	// channels are shared by every device of the endpoint and reset themselves
 	protected void closeConnection(Object con) {
 		if (con instanceof TCPMasterConnection) {
 			TCPMasterConnection tcpCon = (TCPMasterConnection) con;
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.edgexfoundry.domain.meta.Addressable;
+import org.edgexfoundry.exception.controller.ServiceException;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+// Optional non-blocking Modbus TCP engine (modbus.tcp.engine=nio). A few
+// selector threads own one NioChannel per endpoint, so thousands of endpoints
+// are served without a thread blocked in socket I/O for each of them. With the
+// default j2mod engine nothing is started.
+@Service
+@Scope(BeanDefinition.SCOPE_SINGLETON)
+public class ModbusNioEngine {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(ModbusNioEngine.class);
+
+	// j2mod or nio
+	@Value("${modbus.tcp.engine:j2mod}")
+	private String engine;
+
+	@Value("${modbus.tcp.nio.selectors:2}")
+	private int selectors;
+
+	// requests in flight on one connection, most devices only accept one
+	@Value("${modbus.tcp.nio.window:1}")
+	private int window;
+
+	@Value("${modbus.tcp.nio.timeout:3000}")
+	private long timeout;
+
+	// how long a request waits for its turn on a busy connection
+	@Value("${modbus.tcp.nio.queue.timeout:5000}")
+	private long queueTimeout;
+
+	// wire timeouts in a row without a response before the connection is reset
+	@Value("${modbus.tcp.nio.reset.after.timeouts:3}")
+	private int resetAfter;
+
+	// resolution of the timeout wheel
+	@Value("${modbus.tcp.nio.tick:10}")
+	private long tick;
+
+	private final List<NioSelectorLoop> loops = new ArrayList<>();
+	private final Map<String, NioChannel> channels = new ConcurrentHashMap<>();
+	private final AtomicInteger next = new AtomicInteger();
+
+	@PostConstruct
+	public void start() {
+		if (!isEnabled()) {
+			return;
+		}
+		try {
+			for (int i = 0; i < Math.max(1, selectors); i++) {
+				NioSelectorLoop loop = new NioSelectorLoop(tick);
+				Thread thread = new Thread(loop, "modbus-nio-" + (i + 1));
+				thread.setDaemon(true);
+				thread.start();
+				loops.add(loop);
+			}
+		} catch (IOException e) {
+			stop();
+			throw new ServiceException(e);
+		}
+		logger.info("Modbus TCP runs on the NIO engine with " + loops.size() + " selector threads");
+	}
+
+	@PreDestroy
+	public void stop() {
+		channels.values().forEach(NioChannel::close);
+		channels.clear();
+		loops.forEach(NioSelectorLoop::stop);
+		loops.clear();
+	}
+
+	boolean isEnabled() {
+		return "nio".equalsIgnoreCase(engine);
+	}
+
+	NioChannel getChannel(Addressable addressable) {
+		return channels.computeIfAbsent(getKey(addressable), key -> new NioChannel(addressable.getAddress(),
+				addressable.getPort(), Math.max(1, window), timeout, queueTimeout, resetAfter, nextLoop()));
+	}
+
+	void close(Addressable addressable) {
+		NioChannel channel = channels.remove(getKey(addressable));
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("engine", isEnabled() ? "nio" : "j2mod");
+		statistics.put("selectors", loops.size());
+		statistics.put("endpoints", channels.size());
+		long sent = 0;
+		long timeouts = 0;
+		long unmatched = 0;
+		int outstanding = 0;
+		for (NioChannel channel : channels.values()) {
+			sent += channel.getSent();
+			timeouts += channel.getTimeouts();
+			unmatched += channel.getUnmatched();
+			outstanding += channel.getOutstanding();
+		}
+		statistics.put("outstanding", outstanding);
+		statistics.put("sent", sent);
+		statistics.put("timeouts", timeouts);
+		statistics.put("unmatched", unmatched);
+		return statistics;
+	}
+
+	private NioSelectorLoop nextLoop() {
+		return loops.get(Math.floorMod(next.getAndIncrement(), loops.size()));
+	}
+
+	private String getKey(Addressable addressable) {
+		return addressable.getAddress() + ":" + addressable.getPort();
+	}
+}
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+
+// A Modbus TCP socket that keeps up to window requests outstanding at once.
+// Requests are written with their own MBAP transaction id and a reader thread
+// matches each response back to its request by that id, so callers sharing
+// the socket do not wait for each other's round trip. Any I/O failure or
+// malformed frame fails every outstanding request and the next one reconnects.
+class ModbusPipeline implements ModbusChannel {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(ModbusPipeline.class);
+
+	private final String host;
+	private final int port;
+	private final long timeout;
+	private final Semaphore window;
+
+	private final Map<Integer, ChannelResponse> outstanding = new ConcurrentHashMap<>();
+	private final AtomicInteger nextTransactionId = new AtomicInteger();
+
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong unmatched = new AtomicLong();
+
+	private Socket socket;
+	private DataOutputStream output;
+
+	ModbusPipeline(String host, int port, int window, long timeout) {
+		this.host = host;
+		this.port = port;
+		this.timeout = timeout;
+		this.window = new Semaphore(window, true);
+	}
+
+	@Override
+	public CompletableFuture<ModbusResponse> send(ModbusRequest request, long requestTimeout)
+			throws ModbusIOException {
+		try {
+			if (!window.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+				timeouts.incrementAndGet();
+				throw new ModbusIOException("No room in the request window of " + host + ":" + port);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ModbusIOException("Interrupted waiting for the request window of " + host + ":" + port);
+		}
+
+		int transactionId = nextTransactionId.getAndIncrement() & 0xFFFF;
+		ChannelResponse response = new ChannelResponse();
+		response.whenComplete((r, e) -> {
+			outstanding.remove(transactionId, response);
+			window.release();
+		});
+		outstanding.put(transactionId, response);
+		request.setTransactionID(transactionId);
+
+		ByteBuffer frame = ByteBuffer.allocate(MbapCodec.getFrameLength(request));
+		MbapCodec.encode(frame, transactionId, request);
+		try {
+			synchronized (this) {
+				DataOutputStream out = connect();
+				out.write(frame.array());
+				response.onWritten();
+				out.flush();
+			}
+			sent.incrementAndGet();
+		} catch (IOException e) {
+			ModbusIOException failure = new ModbusIOException(
+					"Cannot send to " + host + ":" + port + ": " + e.getMessage());
+			response.completeExceptionally(failure);
+			close(failure);
+			throw failure;
+		}
+		return response;
+	}
+
+	@Override
+	public ModbusResponse await(CompletableFuture<ModbusResponse> response, long requestTimeout)
+			throws ModbusException {
+		long wait = requestTimeout > 0 ? requestTimeout : timeout;
+		try {
+			return response.get(wait, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			timeouts.incrementAndGet();
+			response.completeExceptionally(new ModbusIOException("No response within " + wait + "ms"));
+			throw new ModbusIOException("No response from " + host + ":" + port + " within " + wait + "ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ModbusIOException("Interrupted waiting for " + host + ":" + port);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ModbusException) {
+				throw (ModbusException) e.getCause();
+			}
+			throw new ModbusIOException(String.valueOf(e.getCause().getMessage()));
+		}
+	}
+
+	@Override
+	public long getTimeout() {
+		return timeout;
+	}
+
+	@Override
+	public void close() {
+		close(new ModbusIOException("Connection to " + host + ":" + port + " closed"));
+	}
+
+	int getOutstanding() {
+		return outstanding.size();
+	}
+
+	long getSent() {
+		return sent.get();
+	}
+
+	long getTimeouts() {
+		return timeouts.get();
+	}
+
+	long getUnmatched() {
+		return unmatched.get();
+	}
+
+	private DataOutputStream connect() throws IOException {
+		if (socket == null || socket.isClosed()) {
+			Socket connection = new Socket();
+			connection.setTcpNoDelay(true);
+			connection.connect(new InetSocketAddress(host, port), (int) timeout);
+			socket = connection;
+			output = new DataOutputStream(connection.getOutputStream());
+			DataInputStream input = new DataInputStream(connection.getInputStream());
+			Thread reader = new Thread(() -> read(connection, input), "modbus-pipeline-" + host + ":" + port);
+			reader.setDaemon(true);
+			reader.start();
+			logger.info("Opened pipelined Modbus TCP connection to " + host + ":" + port);
+		}
+		return output;
+	}
+
+	private void read(Socket connection, DataInputStream input) {
+		try {
+			while (!connection.isClosed()) {
+				int transactionId = input.readUnsignedShort();
+				int protocolId = input.readUnsignedShort();
+				int length = input.readUnsignedShort();
+				if (!MbapCodec.isValidHeader(protocolId, length)) {
+					throw new IOException("Malformed frame of protocol " + protocolId + " and " + length + " bytes");
+				}
+				byte[] frame = new byte[length];
+				input.readFully(frame);
+
+				ChannelResponse response = outstanding.get(transactionId);
+				if (response == null) {
+					// the request already timed out
+					unmatched.incrementAndGet();
+					logger.debug("Dropping response " + transactionId + " from " + host + ":" + port);
+					continue;
+				}
+				complete(response, transactionId, frame);
+			}
+		} catch (IOException e) {
+			if (!connection.isClosed()) {
+				logger.warn("Pipelined connection to " + host + ":" + port + " failed: " + e.getMessage());
+			}
+		}
+		synchronized (this) {
+			if (socket == connection) {
+				close(new ModbusIOException("Connection to " + host + ":" + port + " lost"));
+			}
+		}
+	}
+
+	private void complete(ChannelResponse response, int transactionId, byte[] frame) {
+		response.onAnswered();
+		try {
+			response.complete(MbapCodec.decode(transactionId, frame));
+		} catch (ModbusException e) {
+			response.completeExceptionally(e);
+		}
+	}
+
+	private synchronized void close(ModbusIOException failure) {
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				logger.debug("Closing pipelined connection to " + host + ":" + port + " failed: " + e.getMessage());
+			}
+			socket = null;
+			output = null;
+		}
+		outstanding.values().forEach(response -> response.completeExceptionally(failure));
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+
+import org.edgexfoundry.domain.meta.Addressable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+// One pipelined socket per TCP endpoint for gateways and PLCs that accept
+// several outstanding requests. Pipelining is off while the window is 1; it can
+// be limited to some endpoints, the others keep using the connection pool.
+@Service
+@Scope(BeanDefinition.SCOPE_SINGLETON)
+public class ModbusPipelineManager {
+
+	// requests in flight on one socket, 1 disables pipelining
+	@Value("${modbus.tcp.pipeline.window:1}")
+	private int window;
+
+	@Value("${modbus.tcp.pipeline.timeout:3000}")
+	private long timeout;
+
+	// comma separated address:port list, empty for every TCP endpoint
+	@Value("${modbus.tcp.pipeline.endpoints:}")
+	private String endpoints;
+
+	private final Map<String, ModbusPipeline> pipelines = new ConcurrentHashMap<>();
+
+	boolean isPipelined(Addressable addressable) {
+		if (window <= 1) {
+			return false;
+		}
+		if (endpoints == null || endpoints.trim().isEmpty()) {
+			return true;
+		}
+		List<String> enabled = Arrays.asList(endpoints.replace(" ", "").split(","));
+		return enabled.contains(getKey(addressable));
+	}
+
+	ModbusPipeline getPipeline(Addressable addressable) {
+		return pipelines.computeIfAbsent(getKey(addressable),
+				key -> new ModbusPipeline(addressable.getAddress(), addressable.getPort(), window, timeout));
+	}
+
+	void close(Addressable addressable) {
+		ModbusPipeline pipeline = pipelines.remove(getKey(addressable));
+		if (pipeline != null) {
+			pipeline.close();
+		}
+	}
+
+	@PreDestroy
+	public void closeAll() {
+		pipelines.values().forEach(ModbusPipeline::close);
+		pipelines.clear();
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("window", window);
+		pipelines.forEach((key, pipeline) -> {
+			Map<String, Object> endpoint = new LinkedHashMap<>();
+			endpoint.put("outstanding", pipeline.getOutstanding());
+			endpoint.put("sent", pipeline.getSent());
+			endpoint.put("timeouts", pipeline.getTimeouts());
+			endpoint.put("unmatched", pipeline.getUnmatched());
+			statistics.put(key, endpoint);
+		});
+		return statistics;
+	}
+
+	private String getKey(Addressable addressable) {
+		return addressable.getAddress() + ":" + addressable.getPort();
+	}
+}
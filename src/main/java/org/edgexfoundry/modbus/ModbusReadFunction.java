@@ -1,16 +1,21 @@
 package org.edgexfoundry.modbus;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-import org.edgexfoundry.domain.ModbusAttribute;
-import org.edgexfoundry.domain.ModbusDevice;
-import org.edgexfoundry.domain.ModbusObject;
+import org.edgexfoundry.domain.ModbusResourcePlan;
 import org.edgexfoundry.domain.ModbusValueType;
 import org.edgexfoundry.domain.PrimaryTable;
-import org.edgexfoundry.domain.meta.Addressable;
-import org.edgexfoundry.domain.meta.PropertyValue;
+import org.edgexfoundry.domain.ReadingValue;
 import org.edgexfoundry.exception.BadCommandRequestException;
+import org.edgexfoundry.exception.DeviceUnreachableException;
+import org.edgexfoundry.exception.ModbusExceptionResponseException;
 import org.edgexfoundry.exception.controller.DataValidationException;
 import org.edgexfoundry.support.logging.client.EdgeXLogger;
 import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
@@ -18,8 +23,9 @@ import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Repository;
 
+import com.ghgande.j2mod.modbus.ModbusException;
 import com.ghgande.j2mod.modbus.ModbusIOException;
-import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
 import com.ghgande.j2mod.modbus.msg.ReadCoilsRequest;
@@ -34,116 +40,295 @@ class ModbusReadFunction extends ModbusFunction {
 
 	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(ModbusReadFunction.class);
 
-	String readValue(Object connection, Addressable addressable, ModbusObject object, ModbusDevice device,
-			int retryCount) {
-		String result = "";
+	ReadingValue readValue(Object connection, ModbusResourcePlan plan) {
+		ReadingValue result;
 
-		int unitId = Integer.valueOf(addressable.getPath());
-		PrimaryTable primaryTable = super.getPrimaryTable(object);
-		ModbusValueType propertyValueType = super.getModbusValueType(object);
-		int startingAddress = super.getReferencedAddress(object, device);
-
-		ModbusRequest req = this.prepareReadingRequest(primaryTable, startingAddress, propertyValueType.getLength());
-		req.setUnitID(unitId);
+		ModbusValueType propertyValueType = plan.getValueType();
+		ModbusRequest req = this.prepareReadingRequest(plan.getPrimaryTable(), plan.getAddress(),
+				propertyValueType.getLength());
+		req.setUnitID(plan.getUnitId());
+		this.checkIllegalRange(plan.getDeviceName(), req, plan.getAddress(), propertyValueType.getLength());
 
 		try {
-			ModbusTransaction transaction = this.createModbusTransaction(connection, req);
-			transaction.execute();
-
-			ModbusRequest request = transaction.getRequest();
-			ModbusResponse response = transaction.getResponse();
+			ModbusResponse response = this.executeRequest(connection, req, plan.getDeviceName());
 
-			logger.debug("Request (Hex) : " + request.getHexMessage());
-			logger.debug("Response(Hex) : " + response.getHexMessage());
+			if (logger.isDebugEnabled()) {
+				logger.debug("Request (Hex) : " + req.getHexMessage());
+				logger.debug("Response(Hex) : " + response.getHexMessage());
+			}
 
-			byte[] dataBytes = this.fetchDataBytes(response);
+			ByteBuffer data = this.fetchData(response);
 
-			result = this.translateResponseDataBytes(propertyValueType, object, dataBytes);
+			result = RegisterDecoder.decodeRegisters(data, 0, data.remaining(), propertyValueType, plan);
 		} catch (ModbusIOException ioe) {
-			retryCount++;
-			if (retryCount < 3) {
-				logger.warn("Cannot get the value:" + ioe.getMessage() + ",count:" + retryCount);
-				return this.readValue(connection, addressable, object, device, retryCount);
-			} else {
-				logger.debug(ioe.getMessage(), ioe);
-				throw new BadCommandRequestException(ioe.getMessage());
-			}
-
+			// retries are up to the driver's retry policy
+			super.closeConnection(connection);
+			logger.warn("Cannot get the value:" + ioe.getMessage());
+			logger.debug(ioe.getMessage(), ioe);
+			throw new DeviceUnreachableException(ioe.getMessage());
+		} catch (ModbusSlaveException e) {
+			logger.debug(e.getMessage(), e);
+			throw this.toException(e, plan.getDeviceName(), req, plan.getAddress(), propertyValueType.getLength());
 		} catch (Exception e) {
 			logger.debug(e.getMessage(), e);
 			logger.error("General Exception e:" + e.getMessage());
+			if (e instanceof IOException) {
+				throw new DeviceUnreachableException(e.getMessage());
+			}
 			throw new BadCommandRequestException(e.getMessage());
-		} finally {
-			super.closeConnection(connection);
 		}
 
 		return result;
 	}
 
-	Map<String, String> readValues(Object connection, Addressable addressable, ModbusObject object, ModbusDevice device,
-			int retryCount) {
-		Map<String, String> result = new LinkedHashMap<>();
+	Map<String, ReadingValue> readValues(Object connection, ModbusResourcePlan plan) {
+		Map<String, ReadingValue> result = new LinkedHashMap<>();
 
-		ModbusAttribute mAttr = object.getAttributes();
-		if (mAttr.getDeviceResourceReferences().size() == 0 || mAttr.getLength() == 0) {
-			throw new DataValidationException(
-					"Device resource references is empty or Modbus reading block length is 0. " + mAttr.toString());
+		if (!plan.isBlock() || plan.getLength() == 0) {
+			throw new DataValidationException("Device resource references is empty or Modbus reading block length is 0. "
+					+ plan.getObject().getAttributes().toString());
 		}
 
-		int unitId = Integer.valueOf(addressable.getPath());
-		PrimaryTable primaryTable = super.getPrimaryTable(object);
-		int startingAddress = super.getReferencedAddress(object, device);
-
-		ModbusRequest req = this.prepareReadingRequest(primaryTable, startingAddress, mAttr.getLength());
-		req.setUnitID(unitId);
+		ModbusRequest req = this.prepareReadingRequest(plan.getPrimaryTable(), plan.getAddress(), plan.getLength());
+		req.setUnitID(plan.getUnitId());
+		this.checkIllegalRange(plan.getDeviceName(), req, plan.getAddress(), plan.getLength());
 
-		byte[] dataBytes;
+		ByteBuffer data;
 		try {
-			ModbusTransaction transaction = super.createModbusTransaction(connection, req);
-			transaction.execute();
+			ModbusResponse response = this.executeRequest(connection, req, plan.getDeviceName());
 
-			ModbusRequest request = transaction.getRequest();
-			ModbusResponse response = transaction.getResponse();
-
-			logger.debug("Request (Hex) : " + request.getHexMessage());
-			logger.debug("Response(Hex) : " + response.getHexMessage());
-			dataBytes = this.fetchDataBytes(response);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Request (Hex) : " + req.getHexMessage());
+				logger.debug("Response(Hex) : " + response.getHexMessage());
+			}
+			data = this.fetchData(response);
 		} catch (ModbusIOException ioe) {
-			retryCount++;
-			if (retryCount < 3) {
-				logger.warn("Cannot get the value:" + ioe.getMessage() + ",count:" + retryCount);
-				return this.readValues(connection, addressable, object, device, retryCount);
-			} else {
-				logger.debug(ioe.getMessage(), ioe);
-				throw new BadCommandRequestException(ioe.getMessage());
+			// retries are up to the driver's retry policy
+			super.closeConnection(connection);
+			logger.warn("Cannot get the value:" + ioe.getMessage());
+			logger.debug(ioe.getMessage(), ioe);
+			throw new DeviceUnreachableException(ioe.getMessage());
+		} catch (ModbusSlaveException e) {
+			logger.debug(e.getMessage(), e);
+			throw this.toException(e, plan.getDeviceName(), req, plan.getAddress(), plan.getLength());
+		} catch (Exception e) {
+			logger.debug(e.getMessage(), e);
+			logger.error("General Exception e:" + e.getMessage());
+			if (e instanceof IOException) {
+				throw new DeviceUnreachableException(e.getMessage());
 			}
+			throw new BadCommandRequestException(e.getMessage());
+		}
 
+		for (ModbusResourcePlan reference : plan.getReferences()) {
+			int relativeStartingAddress = 2 * (reference.getAddress() - plan.getAddress());
+			ModbusValueType valueType = reference.getValueType();
+			if (relativeStartingAddress + valueType.getLength() > data.remaining()) {
+				logger.error(String.format("%s is not under the scope of %s", reference.getName(), plan.getName()));
+				continue;
+			}
+
+			if (logger.isDebugEnabled()) {
+				logger.debug(String.format("Reading %s inside %s, relative starting address is %d, data type is %s",
+						reference.getName(), plan.getName(), relativeStartingAddress, valueType.toString()));
+			}
+			result.put(reference.getName(), RegisterDecoder.decodeRegisters(data, relativeStartingAddress,
+					2 * valueType.getLength(), valueType, reference));
+		}
+
+		return result;
+	}
+
+	Map<ModbusResourcePlan, ReadingValue> readBlock(Object connection, ReadBlock block) {
+		ModbusRequest req = this.prepareBlockRequest(block);
+
+		ByteBuffer data;
+		try {
+			ModbusResponse response = this.executeRequest(connection, req, block.getDeviceName());
+
+			if (logger.isDebugEnabled()) {
+				logger.debug("Request (Hex) : " + req.getHexMessage());
+				logger.debug("Response(Hex) : " + response.getHexMessage());
+			}
+			data = this.fetchData(response);
+		} catch (ModbusIOException ioe) {
+			// retries are up to the driver's retry policy
+			super.closeConnection(connection);
+			logger.warn("Cannot get the block " + block + ":" + ioe.getMessage());
+			logger.debug(ioe.getMessage(), ioe);
+			throw new DeviceUnreachableException(ioe.getMessage());
+		} catch (ModbusSlaveException e) {
+			logger.debug(e.getMessage(), e);
+			if (ModbusExceptionCode.of(e.getType()).isIllegalRange() && block.getSlots().size() > 1) {
+				return this.readSlots(connection, block);
+			}
+			throw this.toException(e, block.getDeviceName(), req, block.getStartingAddress(), block.getQuantity());
 		} catch (Exception e) {
 			logger.debug(e.getMessage(), e);
 			logger.error("General Exception e:" + e.getMessage());
+			if (e instanceof IOException) {
+				throw new DeviceUnreachableException(e.getMessage());
+			}
 			throw new BadCommandRequestException(e.getMessage());
-		} finally {
-			super.closeConnection(connection);
 		}
 
-		Map<String, ModbusObject> modbusObjects = profileStore.getObjects().get(device.getName());
-		for (String modbusObjectName : mAttr.getDeviceResourceReferences()) {
-			ModbusObject modbusObject = modbusObjects.get(modbusObjectName);
-			int relativeStartingAddress = 2 * (modbusObject.getAttributes().getStartingAddress()
-					- mAttr.getStartingAddress());
-			ModbusValueType valueType = super.getModbusValueType(modbusObject);
-			if (relativeStartingAddress + valueType.getLength() > dataBytes.length) {
-				logger.error(String.format("%s is not under the scope of %s", modbusObjectName, object.getName()));
-				continue;
+		return this.decodeBlock(block, data);
+	}
+
+	// on a pipelined or NIO connection every block request is sent before the first
+	// response is awaited. Blocks the device refuses as illegal are left out of
+	// the result, which only fails when no block could be read.
+	Map<ModbusResourcePlan, ReadingValue> readBlocks(Object connection, List<ReadBlock> blocks) {
+		Map<ModbusResourcePlan, ReadingValue> result = new IdentityHashMap<>();
+		ModbusExceptionResponseException refused = null;
+		if (!(connection instanceof ModbusChannel) || blocks.size() < 2) {
+			for (ReadBlock block : blocks) {
+				try {
+					result.putAll(this.readBlock(connection, block));
+				} catch (ModbusExceptionResponseException e) {
+					refused = this.skipRefused(block, e);
+				}
+			}
+			return this.checkRefused(result, refused);
+		}
+
+		ModbusChannel channel = (ModbusChannel) connection;
+		String deviceName = blocks.get(0).getDeviceName();
+		List<CompletableFuture<ModbusResponse>> responses = new ArrayList<>(blocks.size());
+		int[] waits = new int[blocks.size()];
+		long[] sentAt = new long[blocks.size()];
+		for (ReadBlock block : blocks) {
+			try {
+				ModbusRequest request = this.prepareBlockRequest(block);
+				int i = responses.size();
+				waits[i] = this.getTimeout(connection, request, deviceName);
+				sentAt[i] = System.nanoTime();
+				responses.add(channel.send(request, waits[i]));
+			} catch (ModbusIOException ioe) {
+				logger.warn("Cannot send the block " + block + ":" + ioe.getMessage());
+				responses.forEach(response -> response.cancel(false));
+				throw new DeviceUnreachableException(ioe.getMessage());
 			}
+		}
 
-			logger.debug(String.format("Reading %s inside %s, relative starting addreSs is %d, data type is %s",
-					modbusObjectName, object.getName(), relativeStartingAddress, valueType.toString()));
-			byte[] thisObjectDataBytes = this.extractDataBytes(dataBytes, relativeStartingAddress, valueType);
-			String readingValue = this.translateResponseDataBytes(valueType, modbusObject, thisObjectDataBytes);
-			result.put(modbusObjectName, readingValue);
+		for (int i = 0; i < blocks.size(); i++) {
+			ReadBlock block = blocks.get(i);
+			int timeout = waits[i];
+			try {
+				ModbusResponse response = channel.await(responses.get(i), timeout);
+				if (timeout > 0) {
+					timeouts.onResponse(deviceName, ChannelResponse.getRoundTrip(responses.get(i), sentAt[i]));
+				}
+				if (logger.isDebugEnabled()) {
+					logger.debug("Block " + block + " response(Hex) : " + response.getHexMessage());
+				}
+				result.putAll(this.decodeBlock(block, this.fetchData(response)));
+			} catch (ModbusIOException ioe) {
+				if (timeout > 0) {
+					timeouts.onTimeout(deviceName);
+				}
+				logger.warn("Cannot get the block " + block + ":" + ioe.getMessage());
+				responses.forEach(response -> response.cancel(false));
+				throw new DeviceUnreachableException(ioe.getMessage());
+			} catch (ModbusSlaveException e) {
+				if (timeout > 0) {
+					timeouts.onResponse(deviceName, ChannelResponse.getRoundTrip(responses.get(i), sentAt[i]));
+				}
+				logger.debug(e.getMessage(), e);
+				try {
+					if (ModbusExceptionCode.of(e.getType()).isIllegalRange() && block.getSlots().size() > 1) {
+						result.putAll(this.readSlots(connection, block));
+					} else {
+						refused = this.skipRefused(block, this.toException(e, deviceName,
+								this.prepareBlockRequest(block), block.getStartingAddress(), block.getQuantity()));
+					}
+				} catch (RuntimeException failure) {
+					responses.forEach(response -> response.cancel(false));
+					throw failure;
+				}
+			} catch (ModbusException e) {
+				responses.forEach(response -> response.cancel(false));
+				logger.debug(e.getMessage(), e);
+				logger.error("General Exception e:" + e.getMessage());
+				throw new BadCommandRequestException(e.getMessage());
+			}
+		}
+		return this.checkRefused(result, refused);
+	}
+
+	// read the resources of a refused block one at a time so that only what the
+	// device really refuses is cached; when every resource can be read on its
+	// own, the gaps the block bridged are what was refused
+	private Map<ModbusResourcePlan, ReadingValue> readSlots(Object connection, ReadBlock block) {
+		logger.info("Device " + block.getDeviceName() + " refused " + block + ", reading its resources one by one");
+		Map<ModbusResourcePlan, ReadingValue> result = new IdentityHashMap<>();
+		ModbusExceptionResponseException refused = null;
+		for (ReadBlock.Slot slot : block.getSlots()) {
+			ReadBlock single = new ReadBlock(block.getPrimaryTable(), block.getUnitId(),
+					slot.getResource().getAddress());
+			single.add(slot.getResource());
+			try {
+				result.putAll(this.readBlock(connection, single));
+			} catch (ModbusExceptionResponseException e) {
+				refused = this.skipRefused(single, e);
+			}
 		}
 
+		if (refused == null) {
+			int covered = block.getStartingAddress();
+			for (ReadBlock.Slot slot : block.getSlots()) {
+				int start = block.getStartingAddress() + slot.getOffset();
+				if (start > covered) {
+					illegalRanges.record(block.getDeviceName(), block.getUnitId(), block.getFunctionCode(), covered,
+							start - covered, ModbusExceptionCode.ILLEGAL_DATA_ADDRESS);
+				}
+				covered = Math.max(covered, start + slot.getResource().getValueType().getLength());
+			}
+		}
+		return this.checkRefused(result, refused);
+	}
+
+	// only illegal function and address answers leave a block out, anything
+	// else fails the read
+	private ModbusExceptionResponseException skipRefused(ReadBlock block, RuntimeException e) {
+		if (!(e instanceof ModbusExceptionResponseException)
+				|| !ModbusExceptionCode.of(((ModbusExceptionResponseException) e).getCode()).isIllegalRange()) {
+			throw e;
+		}
+		logger.warn("Skipping " + block + ": " + e.getMessage());
+		return (ModbusExceptionResponseException) e;
+	}
+
+	private Map<ModbusResourcePlan, ReadingValue> checkRefused(Map<ModbusResourcePlan, ReadingValue> result,
+			ModbusExceptionResponseException refused) {
+		if (result.isEmpty() && refused != null) {
+			throw refused;
+		}
+		return result;
+	}
+
+	private ModbusRequest prepareBlockRequest(ReadBlock block) {
+		ModbusRequest req = this.prepareReadingRequest(block.getPrimaryTable(), block.getStartingAddress(),
+				block.getQuantity());
+		req.setUnitID(block.getUnitId());
+		return req;
+	}
+
+	private Map<ModbusResourcePlan, ReadingValue> decodeBlock(ReadBlock block, ByteBuffer data) {
+		Map<ModbusResourcePlan, ReadingValue> result = new IdentityHashMap<>();
+		for (ReadBlock.Slot slot : block.getSlots()) {
+			ModbusResourcePlan resource = slot.getResource();
+			ModbusValueType valueType = resource.getValueType();
+			if (!block.isBitTable()) {
+				result.put(resource, RegisterDecoder.decodeRegisters(data, 2 * slot.getOffset(),
+						2 * valueType.getLength(), valueType, resource));
+			} else if (valueType == ModbusValueType.BOOLEAN) {
+				result.put(resource, RegisterDecoder.decodeBit(data, slot.getOffset()));
+			} else {
+				throw new DataValidationException(
+						resource.getName() + " in " + block.getPrimaryTable() + " must be of value type BOOLEAN");
+			}
+		}
 		return result;
 	}
 
@@ -165,66 +350,20 @@ class ModbusReadFunction extends ModbusFunction {
 		default:
 
 		}
-		logger.debug(String.format("[ Function code : %s ][ starting address : %s ][ length : %s]",
-				modbusRequest.getFunctionCode(), startingAddress, length));
+		if (logger.isDebugEnabled()) {
+			logger.debug(String.format("[ Function code : %s ][ starting address : %s ][ length : %s]",
+					modbusRequest.getFunctionCode(), startingAddress, length));
+		}
 		return modbusRequest;
 	}
 
-	private byte[] fetchDataBytes(ModbusResponse response) {
+	private ByteBuffer fetchData(ModbusResponse response) {
 		byte[] responseData = response.getMessage();
-		byte[] dataBytes = new byte[responseData.length - 1];
-
-		for (int i = 0; i < responseData.length; i++) {
-			if (i == 0) {
-				logger.debug("The number of data bytes : " + ModbusUtil.unsignedByteToInt(responseData[i]));
-			} else {
-				logger.debug("Data byte -> " + ModbusUtil.unsignedByteToInt(responseData[i]));
-				dataBytes[i - 1] = responseData[i];
-			}
+		if (logger.isDebugEnabled()) {
+			logger.debug("The number of data bytes : " + ModbusUtil.unsignedByteToInt(responseData[0])
+					+ ", data bytes : " + ModbusUtil.toHex(responseData));
 		}
-		return dataBytes;
-	}
-
-	private String translateResponseDataBytes(ModbusValueType valueType, ModbusObject object, byte[] dataBytes) {
-		PropertyValue propertyValue = object.getProperties().getValue();
-		ModbusAttribute attributes = object.getAttributes();
-		byte[] newDataBytes = dataBytes;
-		logger.debug(String.format("translateResponseDataBytes with valueType: %s, and date bytes: %s",
-				valueType.toString(), ModbusUtil.toHex(dataBytes)));
-
-		switch (valueType) {
-		case INT16:
-			if (propertyValue.getSigned()) {
-				return Short.toString(ModbusUtil.registerToShort(dataBytes));
-			} else {
-				return Integer.toString(ModbusUtil.registerToUnsignedShort(dataBytes));
-			}
-		case INT32:
-			newDataBytes = sortLongByteForINT32(dataBytes);
-			newDataBytes = swap32BitDataBytes(attributes, newDataBytes);
-			return Integer.toString(ModbusUtil.registersToInt(newDataBytes));
-		case INT64:
-			return Long.toString(ModbusUtil.registersToLong(dataBytes));
-		case FLOAT32:
-			newDataBytes = swap32BitDataBytes(attributes, dataBytes);
-			return Float.toString(ModbusUtil.registersToFloat(newDataBytes));
-		case FLOAT64:
-			return Double.toString(ModbusUtil.registersToDouble(dataBytes));
-		case BOOLEAN:
-			return Byte.toString(dataBytes[0]);
-		default:
-			throw new DataValidationException("Mismatched property value type");
-		}
-	}
-
-	private byte[] extractDataBytes(byte[] blockDataBytes, int startingIndex, ModbusValueType valueType) {
-		byte[] result = new byte[valueType.getLength() * 2];
-		for (int i = 0; i < result.length; i++) {
-			logger.debug(String.format("Extracting %d address to new data byte index %d, the value is %x",
-					startingIndex + i, i, blockDataBytes[startingIndex + i]));
-			result[i] = blockDataBytes[startingIndex + i];
-		}
-		return result;
+		return RegisterDecoder.wrapResponse(responseData);
 	}
 
 }
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.edgexfoundry.domain.ModbusDevice;
+import org.edgexfoundry.domain.ModbusResourcePlan;
+import org.edgexfoundry.domain.PrimaryTable;
+import org.edgexfoundry.exception.IllegalRangeSkippedException;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+// Coalesces the resources of a read into the fewest FC1/2/3/4 requests.
+// Resources are grouped by primary table and unit, sorted by address and
+// merged while the gap between them is within the tolerance and the block
+// stays within the protocol limit for its table. Resources the device
+// refused as illegal are left out and blocks are split around refused
+// ranges.
+@Component
+@Scope(BeanDefinition.SCOPE_SINGLETON)
+class ModbusReadPlanner {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(ModbusReadPlanner.class);
+
+	static final int MAX_READ_REGISTERS = 125;
+	static final int MAX_READ_BITS = 2000;
+
+	// unused registers (or bits) allowed between two resources in the same block
+	@Value("${modbus.read.coalesce.gap:4}")
+	private int gapTolerance;
+
+	@Autowired
+	private IllegalRangeCache illegalRanges;
+
+	List<ReadBlock> plan(Collection<ModbusResourcePlan> resources, ModbusDevice device) {
+		List<ModbusResourcePlan> entries = new ArrayList<>();
+		Map<ModbusResourcePlan, Boolean> seen = new IdentityHashMap<>();
+		for (ModbusResourcePlan resource : resources) {
+			if (seen.put(resource, Boolean.TRUE) == null) {
+				entries.add(resource);
+			}
+		}
+		entries.sort(Comparator.comparing(ModbusResourcePlan::getPrimaryTable)
+				.thenComparingInt(ModbusResourcePlan::getUnitId).thenComparingInt(ModbusResourcePlan::getAddress));
+
+		List<ReadBlock> blocks = new ArrayList<>();
+		ReadBlock block = null;
+		ModbusExceptionCode refused = null;
+		for (ModbusResourcePlan entry : entries) {
+			ModbusExceptionCode code = findIllegal(device, entry.getPrimaryTable(), entry.getUnitId(),
+					entry.getAddress(), entry.getAddress() + entry.getValueType().getLength());
+			if (code != null) {
+				logger.debug("Skipping " + entry.getName() + " of " + device.getName() + ", it was answered with "
+						+ code);
+				illegalRanges.onSkipped();
+				refused = code;
+				continue;
+			}
+			if (block == null || !fits(block, entry, device)) {
+				block = new ReadBlock(entry.getPrimaryTable(), entry.getUnitId(), entry.getAddress());
+				blocks.add(block);
+			}
+			block.add(entry);
+		}
+
+		if (blocks.isEmpty() && refused != null) {
+			throw new IllegalRangeSkippedException(
+					"Device " + device.getName() + " answered every resource read with " + refused, refused.getCode());
+		}
+
+		logger.debug("Planned " + entries.size() + " resources of " + device.getName() + " into " + blocks.size()
+				+ " read requests");
+		return blocks;
+	}
+
+	private boolean fits(ReadBlock block, ModbusResourcePlan entry, ModbusDevice device) {
+		if (block.getPrimaryTable() != entry.getPrimaryTable() || block.getUnitId() != entry.getUnitId()) {
+			return false;
+		}
+		if (entry.getAddress() - block.getEndAddress() > gapTolerance) {
+			return false;
+		}
+		int end = Math.max(block.getEndAddress(), entry.getAddress() + entry.getValueType().getLength());
+		int limit = block.isBitTable() ? MAX_READ_BITS : MAX_READ_REGISTERS;
+		if (end - block.getStartingAddress() > limit) {
+			return false;
+		}
+		return findIllegal(device, block.getPrimaryTable(), block.getUnitId(), block.getStartingAddress(), end) == null;
+	}
+
+	private ModbusExceptionCode findIllegal(ModbusDevice device, PrimaryTable primaryTable, int unitId, int start,
+			int end) {
+		return illegalRanges.find(device.getName(), unitId, ReadBlock.getReadFunctionCode(primaryTable), start, end);
+	}
+}
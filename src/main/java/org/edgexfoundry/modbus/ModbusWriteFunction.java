@@ -1,13 +1,12 @@
 package org.edgexfoundry.modbus;
 
-import org.edgexfoundry.domain.ModbusAttribute;
-import org.edgexfoundry.domain.ModbusDevice;
-import org.edgexfoundry.domain.ModbusObject;
+import java.io.IOException;
+
+import org.edgexfoundry.domain.ModbusResourcePlan;
 import org.edgexfoundry.domain.ModbusValueType;
 import org.edgexfoundry.domain.PrimaryTable;
-import org.edgexfoundry.domain.meta.Addressable;
-import org.edgexfoundry.domain.meta.PropertyValue;
 import org.edgexfoundry.exception.BadCommandRequestException;
+import org.edgexfoundry.exception.DeviceUnreachableException;
 import org.edgexfoundry.exception.controller.DataValidationException;
 import org.edgexfoundry.support.logging.client.EdgeXLogger;
 import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
@@ -16,7 +15,7 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Repository;
 
 import com.ghgande.j2mod.modbus.ModbusIOException;
-import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
 import com.ghgande.j2mod.modbus.msg.WriteMultipleCoilsRequest;
@@ -31,23 +30,20 @@ class ModbusWriteFunction extends ModbusFunction {
 
 	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(ModbusWriteFunction.class);
 	
-	String writeValue(Object connection, Addressable addressable, ModbusObject object, String value,
-			ModbusDevice device, int retryCount) {
-		PrimaryTable primaryTable = this.getPrimaryTable(object);
-		ModbusValueType propertyValueType = this.getModbusValueType(object);
+	String writeValue(Object connection, ModbusResourcePlan plan, String value) {
+		PrimaryTable primaryTable = plan.getPrimaryTable();
+		ModbusValueType propertyValueType = plan.getValueType();
 		Register[] registers = null;
 		if (value != null) {
-			byte[] requestData = this.prepareWritingDataBytes(propertyValueType, object, value);
+			byte[] requestData = this.prepareWritingDataBytes(propertyValueType, plan, value);
 			registers = this.prepareRegisters(propertyValueType, requestData);
 		} else {
-			throw new DataValidationException("Setting value- property:" + object.getName() + ", but value is null");
+			throw new DataValidationException("Setting value- property:" + plan.getName() + ", but value is null");
 		}
 
-		logger.info("Setting value- property:" + object.getName() + ", Value:" + value);
-
-		int startingAddress = this.getReferencedAddress(object, device);
+		logger.info("Setting value- property:" + plan.getName() + ", Value:" + value);
 
-		ModbusRequest req = this.prepareWritingRequest(primaryTable, propertyValueType, startingAddress);
+		ModbusRequest req = this.prepareWritingRequest(primaryTable, propertyValueType, plan.getAddress());
 
 		if (req instanceof WriteMultipleRegistersRequest) {
 			((WriteMultipleRegistersRequest) req).setRegisters(registers);
@@ -55,42 +51,38 @@ class ModbusWriteFunction extends ModbusFunction {
 			boolean coilStatus = registers[0].getValue() > 0 ? true : false;
 			((WriteMultipleCoilsRequest) req).setCoilStatus(0, coilStatus);
 		}
+		this.checkIllegalRange(plan.getDeviceName(), req, plan.getAddress(), propertyValueType.getLength());
 
 		try {
-			ModbusTransaction transaction = this.createModbusTransaction(connection, req);
-			transaction.execute();
-
-			ModbusRequest request = transaction.getRequest();
-			ModbusResponse response = transaction.getResponse();
-			logger.debug("Request (Hex) : " + request.getHexMessage());
+			ModbusResponse response = this.executeRequest(connection, req, plan.getDeviceName());
+			logger.debug("Request (Hex) : " + req.getHexMessage());
 			logger.debug("Response(Hex) : " + response.getHexMessage());
 		} catch (ModbusIOException ioe) {
-			retryCount++;
-			if (retryCount < 3) {
-				logger.error("Cannot set the value:" + ioe.getMessage() + ",count:" + retryCount);
-				return writeValue(connection, addressable, object, value, device, retryCount);
-			} else {
-				throw new BadCommandRequestException(ioe.getMessage());
-			}
+			// retries are up to the driver's retry policy
+			super.closeConnection(connection);
+			logger.error("Cannot set the value:" + ioe.getMessage());
+			throw new DeviceUnreachableException(ioe.getMessage());
+		} catch (ModbusSlaveException e) {
+			logger.debug(e.getMessage(), e);
+			throw this.toException(e, plan.getDeviceName(), req, plan.getAddress(), propertyValueType.getLength());
 		} catch (Exception e) {
 			logger.debug(e.getMessage(), e);
 			logger.error("Cannot set the value general Exception:" + e.getMessage());
+			if (e instanceof IOException) {
+				throw new DeviceUnreachableException(e.getMessage());
+			}
 			throw new BadCommandRequestException(e.getMessage());
-		} finally {
-			super.closeConnection(connection);
 		}
 
 		return value;
 	}
 	
-	private byte[] prepareWritingDataBytes(ModbusValueType valueType, ModbusObject object, String value) {
-		PropertyValue propertyValue = object.getProperties().getValue();
-		ModbusAttribute attributes = object.getAttributes();
+	private byte[] prepareWritingDataBytes(ModbusValueType valueType, ModbusResourcePlan plan, String value) {
 		byte[] requestDataBytes;
 		switch (valueType) {
 		case INT16:
 			value = stripDecimal(value);
-			if (propertyValue.getSigned()) {
+			if (plan.isSigned()) {
 				return ModbusUtil.shortToRegister(Short.parseShort(value));
 			} else {
 				return ModbusUtil.unsignedShortToRegister(Short.parseShort(value));
@@ -99,14 +91,14 @@ class ModbusWriteFunction extends ModbusFunction {
 			value = stripDecimal(value);
 			requestDataBytes = ModbusUtil.intToRegisters(Integer.parseInt(value));
 			requestDataBytes = sortLongByteForINT32(requestDataBytes);
-			requestDataBytes = swap32BitDataBytes(attributes, requestDataBytes);
+			requestDataBytes = swap32BitDataBytes(plan, requestDataBytes);
 			return requestDataBytes;
 		case INT64:
 			value = stripDecimal(value);
 			return ModbusUtil.longToRegisters(Long.parseLong(value));
 		case FLOAT32:
 			requestDataBytes = ModbusUtil.floatToRegisters(Float.parseFloat(value));
-			requestDataBytes = swap32BitDataBytes(attributes, requestDataBytes);
+			requestDataBytes = swap32BitDataBytes(plan, requestDataBytes);
 			return requestDataBytes;
 		case FLOAT64:
 			return ModbusUtil.doubleToRegisters(Double.parseDouble(value));
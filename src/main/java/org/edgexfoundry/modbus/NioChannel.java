@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+
+// A non-blocking Modbus TCP connection to one endpoint. Requests queue on the
+// channel and at most window of them are on the wire at once; frames are
+// encoded into and decoded from direct buffers on the selector thread. A
+// request may wait queueTimeout for its turn and then timeout for its
+// response. A request that times out on the wire fails on its own, its late
+// response is dropped by transaction id; the connection is only reset after
+// resetAfter timeouts in a row without any response, or on a bad frame.
+class NioChannel implements ModbusChannel {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(NioChannel.class);
+
+	private final String host;
+	private final int port;
+	private final int window;
+	private final long timeout;
+	private final long queueTimeout;
+	private final int resetAfter;
+	private final NioSelectorLoop loop;
+
+	// only touched on the loop thread
+	private final Queue<Request> queued = new ArrayDeque<>();
+	private final Map<Integer, Request> inFlight = new HashMap<>();
+	private final ByteBuffer writeBuffer;
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(4 * MbapCodec.MAX_FRAME_LENGTH);
+	private SocketChannel channel;
+	private SelectionKey key;
+	private int nextTransactionId;
+	private int timeoutsInRow;
+
+	private volatile int outstanding;
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong unmatched = new AtomicLong();
+
+	NioChannel(String host, int port, int window, long timeout, long queueTimeout, int resetAfter,
+			NioSelectorLoop loop) {
+		this.host = host;
+		this.port = port;
+		this.window = window;
+		this.timeout = timeout;
+		this.queueTimeout = queueTimeout;
+		this.resetAfter = Math.max(1, resetAfter);
+		this.loop = loop;
+		this.writeBuffer = ByteBuffer.allocateDirect(window * MbapCodec.MAX_FRAME_LENGTH);
+	}
+
+	@Override
+	public CompletableFuture<ModbusResponse> send(ModbusRequest request, long requestTimeout) {
+		Request pending = new Request(request, requestTimeout > 0 ? requestTimeout : timeout);
+		loop.execute(() -> submit(pending));
+		return pending.response;
+	}
+
+	// the timer wheel completes every request, the bound here only guards
+	// against a stopped engine
+	@Override
+	public ModbusResponse await(CompletableFuture<ModbusResponse> response, long requestTimeout)
+			throws ModbusException {
+		try {
+			return response.get(queueTimeout + 2 * Math.max(timeout, requestTimeout), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			response.completeExceptionally(new ModbusIOException("No response within " + timeout + "ms"));
+			throw new ModbusIOException("No response from " + host + ":" + port + " within " + timeout + "ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ModbusIOException("Interrupted waiting for " + host + ":" + port);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ModbusException) {
+				throw (ModbusException) e.getCause();
+			}
+			throw new ModbusIOException(String.valueOf(e.getCause().getMessage()));
+		}
+	}
+
+	@Override
+	public long getTimeout() {
+		return timeout;
+	}
+
+	@Override
+	public void close() {
+		loop.execute(() -> {
+			ModbusIOException failure = new ModbusIOException("Connection to " + host + ":" + port + " closed");
+			reset(failure);
+			fail(queued, failure);
+		});
+	}
+
+	int getOutstanding() {
+		return outstanding;
+	}
+
+	long getSent() {
+		return sent.get();
+	}
+
+	long getTimeouts() {
+		return timeouts.get();
+	}
+
+	long getUnmatched() {
+		return unmatched.get();
+	}
+
+	void handle(SelectionKey selected) {
+		if (selected != key || !selected.isValid()) {
+			return;
+		}
+		if (selected.isConnectable()) {
+			onConnectable();
+		} else {
+			if (selected.isReadable()) {
+				onReadable();
+			}
+			if (selected == key && selected.isValid() && selected.isWritable()) {
+				flush();
+			}
+		}
+	}
+
+	private void submit(Request request) {
+		request.timeout = loop.getWheel().schedule(queueTimeout, () -> onTimeout(request));
+		queued.add(request);
+		if (channel == null) {
+			connect();
+		} else if (channel.isConnected()) {
+			flush();
+		}
+	}
+
+	private void connect() {
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			if (channel.connect(new InetSocketAddress(host, port))) {
+				key = channel.register(loop.getSelector(), SelectionKey.OP_READ, this);
+				flush();
+			} else {
+				key = channel.register(loop.getSelector(), SelectionKey.OP_CONNECT, this);
+			}
+		} catch (IOException e) {
+			failConnect(e);
+		}
+	}
+
+	private void onConnectable() {
+		try {
+			channel.finishConnect();
+			key.interestOps(SelectionKey.OP_READ);
+			logger.info("Opened NIO Modbus TCP connection to " + host + ":" + port);
+			flush();
+		} catch (IOException e) {
+			failConnect(e);
+		}
+	}
+
+	// nothing queued can be sent, fail it rather than reconnecting in a loop
+	private void failConnect(IOException e) {
+		ModbusIOException failure = new ModbusIOException(
+				"Cannot connect to " + host + ":" + port + ": " + e.getMessage());
+		reset(failure);
+		fail(queued, failure);
+	}
+
+	private void flush() {
+		while (inFlight.size() < window && !queued.isEmpty()
+				&& writeBuffer.remaining() >= MbapCodec.getFrameLength(queued.peek().request)) {
+			Request request = queued.poll();
+			if (request.response.isDone()) {
+				continue;
+			}
+			int transactionId = nextTransactionId++ & 0xFFFF;
+			request.request.setTransactionID(transactionId);
+			request.transactionId = transactionId;
+			MbapCodec.encode(writeBuffer, transactionId, request.request);
+			request.response.onWritten();
+			inFlight.put(transactionId, request);
+			request.timeout.cancel();
+			request.timeout = loop.getWheel().schedule(request.responseTimeout, () -> onTimeout(request));
+			sent.incrementAndGet();
+		}
+		outstanding = inFlight.size();
+
+		try {
+			writeBuffer.flip();
+			channel.write(writeBuffer);
+			writeBuffer.compact();
+		} catch (IOException e) {
+			reconnect(new ModbusIOException("Cannot send to " + host + ":" + port + ": " + e.getMessage()));
+			return;
+		}
+		if (writeBuffer.position() > 0) {
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		} else {
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	private void onReadable() {
+		try {
+			if (channel.read(readBuffer) < 0) {
+				reconnect(new ModbusIOException("Connection to " + host + ":" + port + " closed by the device"));
+				return;
+			}
+		} catch (IOException e) {
+			reconnect(new ModbusIOException("Connection to " + host + ":" + port + " failed: " + e.getMessage()));
+			return;
+		}
+
+		readBuffer.flip();
+		while (readBuffer.remaining() >= MbapCodec.HEADER_LENGTH) {
+			int start = readBuffer.position();
+			int protocolId = readBuffer.getShort(start + 2) & 0xFFFF;
+			int length = readBuffer.getShort(start + 4) & 0xFFFF;
+			if (!MbapCodec.isValidHeader(protocolId, length)) {
+				readBuffer.clear();
+				reconnect(new ModbusIOException("Malformed frame of protocol " + protocolId + " and " + length
+						+ " bytes from " + host + ":" + port));
+				return;
+			}
+			if (readBuffer.remaining() < MbapCodec.HEADER_LENGTH + length) {
+				break;
+			}
+			int transactionId = readBuffer.getShort() & 0xFFFF;
+			readBuffer.position(start + MbapCodec.HEADER_LENGTH);
+			byte[] frame = new byte[length];
+			readBuffer.get(frame);
+
+			Request request = inFlight.remove(transactionId);
+			if (request == null) {
+				unmatched.incrementAndGet();
+				logger.debug("Dropping response " + transactionId + " from " + host + ":" + port);
+				continue;
+			}
+			request.timeout.cancel();
+			request.response.onAnswered();
+			timeoutsInRow = 0;
+			try {
+				request.response.complete(MbapCodec.decode(transactionId, frame));
+			} catch (ModbusException e) {
+				request.response.completeExceptionally(e);
+			}
+		}
+		readBuffer.compact();
+		flush();
+	}
+
+	private void onTimeout(Request request) {
+		timeouts.incrementAndGet();
+		if (queued.remove(request)) {
+			request.response.completeExceptionally(new ModbusIOException(
+					"Request to " + host + ":" + port + " not sent within " + queueTimeout + "ms"));
+			// give up on a connection attempt nobody waits for any more
+			if (queued.isEmpty() && channel != null && !channel.isConnected()) {
+				reset(new ModbusIOException("Connection to " + host + ":" + port + " not established"));
+			}
+		} else if (inFlight.remove(request.transactionId, request)) {
+			outstanding = inFlight.size();
+			request.response.completeExceptionally(
+					new ModbusIOException("No response from " + host + ":" + port + " within "
+							+ request.responseTimeout + "ms"));
+			if (++timeoutsInRow >= resetAfter) {
+				timeoutsInRow = 0;
+				reconnect(new ModbusIOException("Connection to " + host + ":" + port + " reset after " + resetAfter
+						+ " timeouts in a row"));
+			} else if (channel != null && channel.isConnected()) {
+				flush();
+			}
+		}
+	}
+
+	// drop the connection and open a new one for the requests still queued
+	private void reconnect(ModbusIOException failure) {
+		reset(failure);
+		if (!queued.isEmpty()) {
+			connect();
+		}
+	}
+
+	private void reset(ModbusIOException failure) {
+		if (key != null) {
+			key.cancel();
+			key = null;
+		}
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.debug("Closing NIO connection to " + host + ":" + port + " failed: " + e.getMessage());
+			}
+			channel = null;
+		}
+		readBuffer.clear();
+		writeBuffer.clear();
+		fail(inFlight.values(), failure);
+		inFlight.clear();
+		outstanding = 0;
+	}
+
+	private void fail(Iterable<Request> requests, ModbusIOException failure) {
+		for (Request request : requests) {
+			request.timeout.cancel();
+			request.response.completeExceptionally(failure);
+		}
+		if (requests == queued) {
+			queued.clear();
+		}
+	}
+
+	private static class Request {
+		private final ModbusRequest request;
+		private final long responseTimeout;
+		private final ChannelResponse response = new ChannelResponse();
+		private TimerWheel.Timeout timeout;
+		private int transactionId;
+
+		Request(ModbusRequest request, long responseTimeout) {
+			this.request = request;
+			this.responseTimeout = responseTimeout;
+		}
+	}
+}
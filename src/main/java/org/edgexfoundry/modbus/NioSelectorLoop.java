@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+
+// One selector thread of the NIO engine. Every NioChannel is owned by one loop
+// and its state is only touched on the loop thread; other threads hand work
+// over with execute. Timeouts are driven by the loop's timer wheel, the
+// selector is woken at least once per tick.
+class NioSelectorLoop implements Runnable {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(NioSelectorLoop.class);
+
+	private final Selector selector;
+	private final TimerWheel wheel;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private volatile boolean running = true;
+
+	NioSelectorLoop(long tickMillis) throws IOException {
+		selector = Selector.open();
+		wheel = new TimerWheel(tickMillis);
+	}
+
+	Selector getSelector() {
+		return selector;
+	}
+
+	TimerWheel getWheel() {
+		return wheel;
+	}
+
+	void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	void stop() {
+		running = false;
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				selector.select(wheel.getTickMillis());
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					task.run();
+				}
+				for (SelectionKey key : selector.selectedKeys()) {
+					((NioChannel) key.attachment()).handle(key);
+				}
+				selector.selectedKeys().clear();
+				wheel.advance();
+			} catch (Exception e) {
+				logger.error("NIO selector loop error: " + e.getMessage());
+				logger.debug(e.getMessage(), e);
+			}
+		}
+		for (SelectionKey key : selector.keys()) {
+			((NioChannel) key.attachment()).close();
+		}
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			logger.debug("Closing selector failed: " + e.getMessage());
+		}
+	}
+}
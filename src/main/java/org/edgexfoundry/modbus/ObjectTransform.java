@@ -25,7 +25,10 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.edgexfoundry.data.ObjectStore;
+import org.edgexfoundry.data.ProfileStore;
+import org.edgexfoundry.domain.ModbusBitField;
 import org.edgexfoundry.domain.ModbusObject;
+import org.edgexfoundry.domain.ReadingValue;
 import org.edgexfoundry.domain.meta.Device;
 import org.edgexfoundry.domain.meta.OperatingState;
 import org.edgexfoundry.domain.meta.PropertyValue;
@@ -47,8 +50,14 @@ public class ObjectTransform {
 	@Autowired
 	ObjectStore objectCache;
 
+	@Autowired
+	ProfileStore profiles;
+
 	// Read current value, then mask and or with the desired set
-	public String maskedValue(PropertyValue value, String val, String result) {
+	public String maskedValue(PropertyValue value, ModbusBitField field, String val, String result) {
+		if (field.isPrimitive()) {
+			return field.format(field.insert(field.parse(val), field.parse(result)));
+		}
 
 		BigInteger intValue = parse(value, val);
 		BigInteger resultValue = parse(value, result);
@@ -61,11 +70,19 @@ public class ObjectTransform {
 		return String.format("%0" + value.size() + "X", maskedVal);
 	}
 
-	public String transform(PropertyValue value, String result) {
+	public String transform(PropertyValue value, ModbusBitField field, String result) {
 
 		double floatValue;
 
-		if (value.getLSB() != null) {
+		if (value.getLSB() != null && field.isPrimitive() && field.fitsLong(result)) {
+			long val = field.extract(field.parse(result));
+
+			if (!objectCache.getTransformData()) {
+				return String.valueOf((int) val);
+			}
+
+			floatValue = val;
+		} else if (value.getLSB() != null) {
 			BigInteger val = parse(value, result);
 
 			if (!value.mask().equals(BigInteger.ZERO))
@@ -135,37 +152,51 @@ public class ObjectTransform {
 		return val;
 	}
 
-	public String format(PropertyValue value, String arg) {
+	public String format(PropertyValue value, ModbusBitField field, String arg) {
+		if (field.isPrimitive()) {
+			return field.format((int) field.parse(arg));
+		}
 		BigInteger intValue = parse(value, arg);
 		Integer val = intValue.intValue();
 		return String.format("%0" + value.size() + "X", val);
 	}
 
-	public String transformGetResult(String result, ModbusObject object, Device device, ResourceOperation operation) {
+	public ReadingValue transformGetResult(ReadingValue result, ModbusObject object, Device device,
+			ResourceOperation operation) {
+		TransformChain chain = profiles.getTransformChain(device.getName(), operation, object);
+		if (chain != null) {
+			return chain.apply(result, device);
+		}
+
 		PropertyValue propValue = object.getProperties().getValue();
 
 		checkAssertion(result, device, propValue);
 
 		if (propValue.scale() != 1.0F) {
-			result = String.valueOf((Float.parseFloat(result) * propValue.scale()));
+			result = ReadingValue.ofFloat(result.floatValue() * propValue.scale());
 		}
 
-		result = calculateByFunctions(result, operation);
+		List<String> functions = operation.getTransformFunctions();
+		if (functions != null && !functions.isEmpty()) {
+			result = ReadingValue.ofText(calculateByFunctions(result.toString(), operation));
+		}
 
 		Map<String, String> mappings = operation.getMappings();
 		if("set".equals(operation.getOperation().toLowerCase())) {
 			mappings = mappings.entrySet().stream().collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey)); 
 		}
-		result = mappingResult(result, mappings);
+		if (mappings != null && mappings.containsKey(result.toString())) {
+			result = ReadingValue.ofText(mappingResult(result.toString(), mappings));
+		}
 
 		return result;
 	}
 
-	private void checkAssertion(String result, Device device, PropertyValue propValue) {
+	private void checkAssertion(ReadingValue result, Device device, PropertyValue propValue) {
 		// if there is an assertion set for the object on a get command, test it
 		// if it fails the assertion, pass error to core services (disable device?)
 		if (propValue.getAssertion() != null) {
-			if (!result.equals(propValue.getAssertion().toString())) {
+			if (!result.toString().equals(propValue.getAssertion().toString())) {
 				device.setOperatingState(OperatingState.DISABLED);
 				throw new DataValidationException("Assertion failed with value: " + result);
 			}
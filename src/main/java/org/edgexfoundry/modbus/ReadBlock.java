@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.edgexfoundry.domain.ModbusResourcePlan;
+import org.edgexfoundry.domain.PrimaryTable;
+
+// One Modbus read request covering the registers (or coils) of several device
+// resources. Each slot records where a resource's data sits inside the block.
+class ReadBlock {
+
+	private final PrimaryTable primaryTable;
+	private final int unitId;
+	private final int startingAddress;
+	private int quantity;
+	private final List<Slot> slots = new ArrayList<>();
+
+	ReadBlock(PrimaryTable primaryTable, int unitId, int startingAddress) {
+		this.primaryTable = primaryTable;
+		this.unitId = unitId;
+		this.startingAddress = startingAddress;
+	}
+
+	void add(ModbusResourcePlan resource) {
+		int offset = resource.getAddress() - startingAddress;
+		slots.add(new Slot(resource, offset));
+		quantity = Math.max(quantity, offset + resource.getValueType().getLength());
+	}
+
+	boolean isBitTable() {
+		return primaryTable == PrimaryTable.COILS || primaryTable == PrimaryTable.DISCRETES_INPUT;
+	}
+
+	PrimaryTable getPrimaryTable() {
+		return primaryTable;
+	}
+
+	int getFunctionCode() {
+		return getReadFunctionCode(primaryTable);
+	}
+
+	// FC1 to FC4
+	static int getReadFunctionCode(PrimaryTable primaryTable) {
+		switch (primaryTable) {
+		case COILS:
+			return 1;
+		case DISCRETES_INPUT:
+			return 2;
+		case HOLDING_REGISTERS:
+			return 3;
+		case INPUT_REGISTERS:
+			return 4;
+		default:
+			return 0;
+		}
+	}
+
+	int getUnitId() {
+		return unitId;
+	}
+
+	// blocks are planned per device
+	String getDeviceName() {
+		return slots.isEmpty() ? null : slots.get(0).getResource().getDeviceName();
+	}
+
+	int getStartingAddress() {
+		return startingAddress;
+	}
+
+	int getEndAddress() {
+		return startingAddress + quantity;
+	}
+
+	int getQuantity() {
+		return quantity;
+	}
+
+	List<Slot> getSlots() {
+		return slots;
+	}
+
+	@Override
+	public String toString() {
+		return "ReadBlock [primaryTable=" + primaryTable + ", unitId=" + unitId + ", startingAddress="
+				+ startingAddress + ", quantity=" + quantity + ", slots=" + slots.size() + "]";
+	}
+
+	static class Slot {
+		private final ModbusResourcePlan resource;
+		private final int offset;
+
+		Slot(ModbusResourcePlan resource, int offset) {
+			this.resource = resource;
+			this.offset = offset;
+		}
+
+		ModbusResourcePlan getResource() {
+			return resource;
+		}
+
+		// offset from the block's starting address, in registers or bits
+		int getOffset() {
+			return offset;
+		}
+	}
+}
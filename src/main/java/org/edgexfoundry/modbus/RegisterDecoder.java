@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.nio.ByteBuffer;
+
+import org.edgexfoundry.domain.ModbusResourcePlan;
+import org.edgexfoundry.domain.ModbusValueType;
+import org.edgexfoundry.domain.ReadingValue;
+import org.edgexfoundry.exception.controller.DataValidationException;
+
+// Decodes resource values straight out of the data bytes of a read response.
+// The buffer holds the registers in wire (big endian) order; byte and word
+// swapping is applied on the primitive value, so nothing is copied per
+// register.
+final class RegisterDecoder {
+
+	private RegisterDecoder() {
+	}
+
+	// wrap the data bytes of a response message, skipping the byte count
+	static ByteBuffer wrapResponse(byte[] message) {
+		return ByteBuffer.wrap(message, 1, message.length - 1).slice();
+	}
+
+	// decode the value of a register resource whose data starts at index and
+	// spans length bytes of the buffer
+	static ReadingValue decodeRegisters(ByteBuffer data, int index, int length, ModbusValueType valueType,
+			ModbusResourcePlan plan) {
+		switch (valueType) {
+		case INT16:
+			if (plan.isSigned()) {
+				return ReadingValue.ofLong(data.getShort(index));
+			} else {
+				return ReadingValue.ofLong(data.getShort(index) & 0xFFFF);
+			}
+		case INT32:
+			return ReadingValue.ofLong(swap32(plan, readInt32(data, index, length)));
+		case INT64:
+			return ReadingValue.ofLong(data.getLong(index));
+		case FLOAT32:
+			return ReadingValue
+					.ofFloat(Float.intBitsToFloat(swap32(plan, readInt32(data, index, Math.min(length, 4)))));
+		case FLOAT64:
+			return ReadingValue.ofDouble(data.getDouble(index));
+		case BOOLEAN:
+			return ReadingValue.ofBoolean(data.get(index));
+		default:
+			throw new DataValidationException("Mismatched property value type");
+		}
+	}
+
+	// decode a single coil or discrete input at bit of the buffer
+	static ReadingValue decodeBit(ByteBuffer data, int bit) {
+		return ReadingValue.ofBoolean((byte) ((data.get(bit / 8) >> (bit % 8)) & 1));
+	}
+
+	private static int readInt32(ByteBuffer data, int index, int length) {
+		if (length == 8) {
+			// a 64 bit response for a 32 bit value carries it in the low word of
+			// each 32 bit half
+			return (data.getShort(index + 2) & 0xFFFF) << 16 | (data.getShort(index + 6) & 0xFFFF);
+		}
+		if (length < 4) {
+			return 0;
+		}
+		return data.getInt(index);
+	}
+
+	private static int swap32(ModbusResourcePlan plan, int value) {
+		if (plan.isByteSwap()) {
+			value = (value & 0x00FF00FF) << 8 | (value >>> 8) & 0x00FF00FF;
+		}
+		if (!plan.isWordSwap()) {
+			value = value << 16 | value >>> 16;
+		}
+		return value;
+	}
+}
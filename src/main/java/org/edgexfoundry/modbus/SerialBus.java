@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.edgexfoundry.exception.controller.ServiceException;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+
+import com.ghgande.j2mod.modbus.net.SerialConnection;
+
+// Owner of one serial line. The port is opened once and every transaction for
+// every unit ID on the line runs on the bus thread, one at a time, in priority
+// then arrival order.
+class SerialBus {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(SerialBus.class);
+
+	static final int PRIORITY_WRITE = 0;
+	static final int PRIORITY_READ = 1;
+
+	private final String portName;
+	private final SerialConnection connection;
+	private final PriorityBlockingQueue<BusTask<?>> queue = new PriorityBlockingQueue<>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final Thread worker;
+	private volatile boolean running = true;
+
+	private final long startedAt = System.nanoTime();
+	private final AtomicLong transactions = new AtomicLong();
+	private final AtomicLong busyNanos = new AtomicLong();
+	private volatile long lastBusNanos;
+	private volatile long maxBusNanos;
+
+	SerialBus(String portName, SerialConnection connection) {
+		this.portName = portName;
+		this.connection = connection;
+		worker = new Thread(this::run, "modbus-rtu-" + portName);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	<T> T execute(int priority, Function<Object, T> operation) {
+		CompletableFuture<T> result = submit(priority, operation);
+		try {
+			return result.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new ServiceException(e.getCause());
+		} catch (InterruptedException e) {
+			result.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new ServiceException(e);
+		}
+	}
+
+	<T> CompletableFuture<T> submit(int priority, Function<Object, T> operation) {
+		if (!running) {
+			throw new ServiceException(new IllegalStateException("Serial bus " + portName + " is closed"));
+		}
+		BusTask<T> task = new BusTask<>(priority, sequence.getAndIncrement(), operation);
+		queue.put(task);
+		return task.result;
+	}
+
+	void close() {
+		running = false;
+		worker.interrupt();
+		BusTask<?> task;
+		while ((task = queue.poll()) != null) {
+			task.result.cancel(false);
+		}
+		if (connection.isOpen()) {
+			connection.close();
+		}
+	}
+
+	Map<String, Object> getStatistics() {
+		long count = transactions.get();
+		long busy = busyNanos.get();
+		long elapsed = Math.max(1, System.nanoTime() - startedAt);
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("queueDepth", queue.size());
+		statistics.put("transactions", count);
+		statistics.put("lastBusTimeMs", lastBusNanos / 1e6);
+		statistics.put("maxBusTimeMs", maxBusNanos / 1e6);
+		statistics.put("averageBusTimeMs", count == 0 ? 0 : busy / count / 1e6);
+		statistics.put("utilisation", (double) busy / elapsed);
+		return statistics;
+	}
+
+	private void run() {
+		while (running) {
+			BusTask<?> task;
+			try {
+				task = queue.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (task.result.isDone()) {
+				continue;
+			}
+			long start = System.nanoTime();
+			task.run(connection);
+			long busy = System.nanoTime() - start;
+
+			transactions.incrementAndGet();
+			busyNanos.addAndGet(busy);
+			lastBusNanos = busy;
+			if (busy > maxBusNanos) {
+				maxBusNanos = busy;
+			}
+		}
+		logger.info("Serial bus " + portName + " stopped");
+	}
+
+	private static class BusTask<T> implements Comparable<BusTask<?>> {
+		private final int priority;
+		private final long sequence;
+		private final Function<Object, T> operation;
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+
+		BusTask(int priority, long sequence, Function<Object, T> operation) {
+			this.priority = priority;
+			this.sequence = sequence;
+			this.operation = operation;
+		}
+
+		void run(Object connection) {
+			try {
+				result.complete(operation.apply(connection));
+			} catch (Throwable e) {
+				result.completeExceptionally(e);
+			}
+		}
+
+		@Override
+		public int compareTo(BusTask<?> other) {
+			if (priority != other.priority) {
+				return Integer.compare(priority, other.priority);
+			}
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+
+import org.edgexfoundry.domain.meta.Addressable;
+import org.edgexfoundry.exception.controller.ServiceException;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+import com.ghgande.j2mod.modbus.net.SerialConnection;
+import com.ghgande.j2mod.modbus.util.SerialParameters;
+
+// One SerialBus per serial port, shared by every device addressed on that line
+@Service
+@Scope(BeanDefinition.SCOPE_SINGLETON)
+public class SerialBusManager {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(SerialBusManager.class);
+
+	@Value("${modbus.rtu.timeout:3000}")
+	private int modbus_rtu_timeout;
+
+	private final Map<String, SerialBus> buses = new ConcurrentHashMap<>();
+
+	private final Map<SerialConnection, Integer> baudRates = new ConcurrentHashMap<>();
+
+	SerialBus getBus(Addressable addressable) {
+		return buses.computeIfAbsent(getPortName(addressable), port -> createBus(port, addressable));
+	}
+
+	@PreDestroy
+	public void closeAll() {
+		buses.values().forEach(SerialBus::close);
+		buses.clear();
+		baudRates.clear();
+	}
+
+	// line speed of a serial connection opened here, 0 for any other connection
+	int getBaudRate(Object connection) {
+		if (!(connection instanceof SerialConnection)) {
+			return 0;
+		}
+		return baudRates.getOrDefault(connection, 9600);
+	}
+
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		buses.forEach((port, bus) -> statistics.put(port, bus.getStatistics()));
+		return statistics;
+	}
+
+	private String getPortName(Addressable addressable) {
+		return addressable.getAddress().split(",")[0].trim();
+	}
+
+	private SerialBus createBus(String portName, Addressable addressable) {
+		SerialConnection connection = createSerialConnection(addressable);
+		if (connection == null) {
+			throw new ServiceException(
+					new IllegalStateException("Modbus RTU Connection cannot be created for " + portName));
+		}
+		logger.info("Created serial bus for port " + portName);
+		return new SerialBus(portName, connection);
+	}
+
+	private SerialConnection createSerialConnection(Addressable addressable) {
+		SerialConnection con = null;
+		try {
+			SerialParameters params = new SerialParameters();
+			String address = addressable.getAddress();
+			String[] serialParams = address.split(",");
+			if (serialParams.length > 0) {
+				if (serialParams[0] != null) {
+					params.setPortName(serialParams[0].trim());
+					logger.info("Port:" + serialParams[0].trim());
+				}
+				if (serialParams[1] != null) {
+					params.setBaudRate(Integer.parseInt(serialParams[1].trim()));
+					logger.info("BaudRate:" + serialParams[1].trim());
+				}
+				if (serialParams[2] != null) {
+
+					params.setDatabits(Integer.parseInt(serialParams[2].trim()));
+					logger.info("Data Bits:" + serialParams[2].trim());
+
+				}
+				if (serialParams[3] != null) {
+					params.setStopbits(Integer.parseInt(serialParams[3].trim()));
+					logger.info("Stop Bitse:" + serialParams[3].trim());
+
+				}
+				if (serialParams[4] != null) {
+					params.setParity(Integer.parseInt(serialParams[4].trim()));
+					logger.info("Parity:" + serialParams[4].trim());
+
+				}
+
+				params.setEncoding("rtu");
+				params.setEcho(false);
+			}
+			con = new SerialConnection(params);
+			con.setTimeout(modbus_rtu_timeout);
+			baudRates.put(con, params.getBaudRate());
+			logger.info("Created Modbus RTU Connection for " + addressable.toString());
+		} catch (Exception e) {
+			logger.debug(e.getMessage(), e);
+			logger.error("Exception in creating Serial connection:" + e.getMessage());
+		}
+		return con;
+	}
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+// Hashed timer wheel for request timeouts of one selector loop. Timeouts are
+// kept in slots of tick milliseconds and are only touched by the loop thread,
+// so scheduling and cancelling are constant time and need no locking.
+final class TimerWheel {
+
+	private static final int SLOTS = 512;
+
+	private final long tickMillis;
+	private final long start = System.nanoTime();
+	private final Deque<Timeout>[] slots;
+	private long tick;
+	private final Deque<Timeout> expired = new ArrayDeque<>();
+
+	@SuppressWarnings("unchecked")
+	TimerWheel(long tickMillis) {
+		this.tickMillis = Math.max(1, tickMillis);
+		slots = new Deque[SLOTS];
+		for (int i = 0; i < SLOTS; i++) {
+			slots[i] = new ArrayDeque<>();
+		}
+	}
+
+	long getTickMillis() {
+		return tickMillis;
+	}
+
+	Timeout schedule(long delayMillis, Runnable task) {
+		long deadline = Math.max(tick, (elapsed() + delayMillis + tickMillis - 1) / tickMillis);
+		Timeout timeout = new Timeout(deadline, task);
+		slots[(int) (deadline & (SLOTS - 1))].add(timeout);
+		return timeout;
+	}
+
+	// run every timeout whose tick has passed; expired tasks run after the slot
+	// is swept as they may schedule new timeouts
+	void advance() {
+		long now = elapsed();
+		while (tick * tickMillis <= now) {
+			Iterator<Timeout> timeouts = slots[(int) (tick & (SLOTS - 1))].iterator();
+			while (timeouts.hasNext()) {
+				Timeout timeout = timeouts.next();
+				if (timeout.cancelled) {
+					timeouts.remove();
+				} else if (timeout.deadline <= tick) {
+					timeouts.remove();
+					expired.add(timeout);
+				}
+			}
+			tick++;
+			Timeout timeout;
+			while ((timeout = expired.poll()) != null) {
+				timeout.task.run();
+			}
+		}
+	}
+
+	private long elapsed() {
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	static final class Timeout {
+		private final long deadline;
+		private final Runnable task;
+		private boolean cancelled;
+
+		private Timeout(long deadline, Runnable task) {
+			this.deadline = deadline;
+			this.task = task;
+		}
+
+		void cancel() {
+			cancelled = true;
+		}
+	}
+}
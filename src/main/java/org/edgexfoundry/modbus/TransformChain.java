@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.edgexfoundry.domain.ModbusObject;
+import org.edgexfoundry.domain.ReadingValue;
+import org.edgexfoundry.domain.meta.Device;
+import org.edgexfoundry.domain.meta.OperatingState;
+import org.edgexfoundry.domain.meta.PropertyValue;
+import org.edgexfoundry.domain.meta.ResourceOperation;
+import org.edgexfoundry.exception.controller.DataValidationException;
+import org.edgexfoundry.support.logging.client.EdgeXLogger;
+import org.edgexfoundry.support.logging.client.EdgeXLoggerFactory;
+
+import com.iotechsys.edgexpert.utils.ReadingValueTransformer;
+import com.iotechsys.edgexpert.utils.exception.DataTransformException;
+
+// The get result transformation of one device resource read through one
+// resource operation: assertion, scale, transform functions and mappings,
+// resolved once when the device is added. Only the steps the profile
+// actually defines are part of the chain.
+public class TransformChain {
+
+	private final static EdgeXLogger logger = EdgeXLoggerFactory.getEdgeXLogger(TransformChain.class);
+
+	interface Step {
+		ReadingValue apply(ReadingValue value, Device device);
+	}
+
+	private final Step[] steps;
+
+	private TransformChain(List<Step> steps) {
+		this.steps = steps.toArray(new Step[steps.size()]);
+	}
+
+	public ReadingValue apply(ReadingValue value, Device device) {
+		for (Step step : steps) {
+			value = step.apply(value, device);
+		}
+		return value;
+	}
+
+	// returns null when the profile definition cannot be compiled, in which case
+	// ObjectTransform transforms the result directly and reports the error
+	public static TransformChain compile(ModbusObject object, ResourceOperation operation) {
+		try {
+			List<Step> steps = new ArrayList<>();
+			PropertyValue propValue = object.getProperties().getValue();
+
+			if (propValue.getAssertion() != null) {
+				String assertion = propValue.getAssertion().toString();
+				steps.add((value, device) -> {
+					if (!value.toString().equals(assertion)) {
+						device.setOperatingState(OperatingState.DISABLED);
+						throw new DataValidationException("Assertion failed with value: " + value);
+					}
+					return value;
+				});
+			}
+
+			float scale = propValue.scale();
+			if (scale != 1.0F) {
+				steps.add((value, device) -> ReadingValue.ofFloat(value.floatValue() * scale));
+			}
+
+			List<String> functions = operation.getTransformFunctions();
+			if (functions != null && !functions.isEmpty()) {
+				List<String> compiled = Collections.unmodifiableList(new ArrayList<>(functions));
+				steps.add((value, device) -> ReadingValue.ofText(transformByFunctions(value.toString(), compiled)));
+			}
+
+			Map<String, String> mappings = operation.getMappings();
+			if ("set".equals(operation.getOperation().toLowerCase())) {
+				mappings = mappings.entrySet().stream()
+						.collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
+			}
+			if (mappings != null && !mappings.isEmpty()) {
+				Map<String, String> compiled = mappings;
+				steps.add((value, device) -> compiled.containsKey(value.toString())
+						? ReadingValue.ofText(compiled.get(value.toString())) : value);
+			}
+
+			return new TransformChain(steps);
+		} catch (Exception e) {
+			logger.debug("Transform of " + object.getName() + " is not compiled: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static String transformByFunctions(String value, List<String> functions) {
+		try {
+			return ReadingValueTransformer.transformByFunctions(value, functions);
+		} catch (DataTransformException e) {
+			logger.error(e.getMessage(), e);
+			throw new DataValidationException(e.getMessage());
+		}
+	}
+}
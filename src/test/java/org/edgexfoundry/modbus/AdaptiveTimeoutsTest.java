@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class AdaptiveTimeoutsTest {
+
+	private static final String DEVICE = "meter";
+
+	private AdaptiveTimeouts timeouts;
+
+	@Before
+	public void setUp() {
+		timeouts = new AdaptiveTimeouts();
+		ReflectionTestUtils.setField(timeouts, "adaptive", true);
+		ReflectionTestUtils.setField(timeouts, "floor", 100L);
+		ReflectionTestUtils.setField(timeouts, "ceiling", 0L);
+		ReflectionTestUtils.setField(timeouts, "margin", 50L);
+	}
+
+	@Test
+	public void deviceWithoutSamplesGetsTheConfiguredTimeout() {
+		assertEquals(3000, timeouts.getTimeout(DEVICE, 3000, 0));
+	}
+
+	@Test
+	public void followsTheRoundTripDownToTheFloor() {
+		timeouts.getTimeout(DEVICE, 3000, 0);
+		timeouts.onResponse(DEVICE, 20);
+
+		assertEquals(100, timeouts.getTimeout(DEVICE, 3000, 0));
+	}
+
+	@Test
+	public void coversTheTransferTimeOfLongFrames() {
+		timeouts.getTimeout(DEVICE, 3000, 0);
+		timeouts.onResponse(DEVICE, 20);
+
+		// a 125 register read at 9600 baud: 8 request and 255 response bytes
+		long transfer = AdaptiveTimeouts.getTransferTime(8 + 255, 9600);
+
+		assertEquals(302, transfer);
+		assertEquals(352, timeouts.getTimeout(DEVICE, 3000, transfer));
+	}
+
+	@Test
+	public void neverExceedsTheCeiling() {
+		timeouts.getTimeout(DEVICE, 300, 0);
+		timeouts.onResponse(DEVICE, 20);
+
+		assertEquals(300, timeouts.getTimeout(DEVICE, 300, 302));
+	}
+
+	@Test
+	public void doublesOnTimeout() {
+		timeouts.getTimeout(DEVICE, 3000, 0);
+		timeouts.onResponse(DEVICE, 20);
+		timeouts.onTimeout(DEVICE);
+
+		assertEquals(200, timeouts.getTimeout(DEVICE, 3000, 0));
+	}
+
+	@Test
+	public void transferTimeNeedsALineSpeed() {
+		assertEquals(0, AdaptiveTimeouts.getTransferTime(263, 0));
+		assertEquals(3, AdaptiveTimeouts.getTransferTime(263, 1000000));
+	}
+}
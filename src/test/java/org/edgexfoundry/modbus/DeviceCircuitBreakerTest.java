@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.edgexfoundry.domain.meta.OperatingState;
+import org.edgexfoundry.handler.DeviceStatusUpdater;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class DeviceCircuitBreakerTest {
+
+	private static final String DEVICE = "meter";
+
+	private DeviceCircuitBreaker breakers;
+	private DeviceStatusUpdater statusUpdater;
+
+	@Before
+	public void setUp() {
+		statusUpdater = mock(DeviceStatusUpdater.class);
+		breakers = new DeviceCircuitBreaker();
+		ReflectionTestUtils.setField(breakers, "enabled", true);
+		ReflectionTestUtils.setField(breakers, "window", 4);
+		ReflectionTestUtils.setField(breakers, "minimumCalls", 4);
+		ReflectionTestUtils.setField(breakers, "failureRate", 50);
+		ReflectionTestUtils.setField(breakers, "openDuration", 60000L);
+		ReflectionTestUtils.setField(breakers, "statusUpdater", statusUpdater);
+	}
+
+	@Test
+	public void staysClosedBelowMinimumCalls() {
+		breakers.onFailure(DEVICE);
+		breakers.onFailure(DEVICE);
+		breakers.onFailure(DEVICE);
+
+		assertEquals("CLOSED", getState());
+		assertTrue(breakers.allow(DEVICE));
+	}
+
+	@Test
+	public void opensAtFailureRate() {
+		breakers.onSuccess(DEVICE);
+		breakers.onSuccess(DEVICE);
+		breakers.onFailure(DEVICE);
+		breakers.onFailure(DEVICE);
+
+		assertEquals("OPEN", getState());
+		assertFalse(breakers.allow(DEVICE));
+		verify(statusUpdater).setOperatingState(DEVICE, OperatingState.DISABLED);
+	}
+
+	@Test
+	public void forgetsOutcomesOutsideTheWindow() {
+		breakers.onFailure(DEVICE);
+		for (int i = 0; i < 4; i++) {
+			breakers.onSuccess(DEVICE);
+		}
+		breakers.onFailure(DEVICE);
+
+		assertEquals("CLOSED", getState());
+	}
+
+	@Test
+	public void neutralOutcomesDoNotCount() {
+		breakers.onFailure(DEVICE);
+		breakers.onFailure(DEVICE);
+		breakers.onSuccess(DEVICE);
+		breakers.onNeutral(DEVICE);
+		breakers.onNeutral(DEVICE);
+		breakers.onSuccess(DEVICE);
+
+		assertEquals("CLOSED", getState());
+		assertEquals(4, getDevice().get("calls"));
+	}
+
+	@Test
+	public void successfulProbeClosesTheCircuit() {
+		open();
+		ReflectionTestUtils.setField(breakers, "openDuration", 0L);
+
+		assertEquals(Collections.singletonList(DEVICE), breakers.getDueForProbe());
+		assertTrue(breakers.allow(DEVICE));
+		assertEquals("HALF_OPEN", getState());
+		assertFalse("only one probe at a time", breakers.allow(DEVICE));
+
+		breakers.onSuccess(DEVICE);
+
+		assertEquals("CLOSED", getState());
+		assertTrue(breakers.allow(DEVICE));
+		verify(statusUpdater).setOperatingState(DEVICE, OperatingState.ENABLED);
+	}
+
+	@Test
+	public void failedProbeOpensTheCircuitAgain() {
+		open();
+		ReflectionTestUtils.setField(breakers, "openDuration", 0L);
+		assertTrue(breakers.allow(DEVICE));
+
+		breakers.onFailure(DEVICE);
+
+		assertEquals("OPEN", getState());
+		assertEquals(2L, getDevice().get("opened"));
+		verify(statusUpdater, never()).setOperatingState(DEVICE, OperatingState.ENABLED);
+	}
+
+	@Test
+	public void neutralProbeLeavesTheCircuitDueForTheNextProbe() {
+		open();
+		ReflectionTestUtils.setField(breakers, "openDuration", 0L);
+		assertTrue(breakers.allow(DEVICE));
+
+		breakers.onNeutral(DEVICE);
+
+		assertEquals("OPEN", getState());
+		assertEquals(1L, getDevice().get("opened"));
+		assertEquals(Collections.singletonList(DEVICE), breakers.getDueForProbe());
+		assertTrue(breakers.allow(DEVICE));
+	}
+
+	@Test
+	public void disabledBreakerAllowsEverything() {
+		ReflectionTestUtils.setField(breakers, "enabled", false);
+		open();
+
+		assertTrue(breakers.allow(DEVICE));
+		assertTrue(breakers.getDueForProbe().isEmpty());
+	}
+
+	private void open() {
+		for (int i = 0; i < 4; i++) {
+			breakers.onFailure(DEVICE);
+		}
+	}
+
+	private String getState() {
+		return (String) getDevice().get("state");
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> getDevice() {
+		return (Map<String, Object>) breakers.getStatistics().get(DEVICE);
+	}
+}
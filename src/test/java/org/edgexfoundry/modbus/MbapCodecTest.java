@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+
+public class MbapCodecTest {
+
+	@Test
+	public void encodesHeaderUnitAndPdu() {
+		ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(0x0102, 10);
+		request.setUnitID(17);
+		ByteBuffer frame = ByteBuffer.allocate(MbapCodec.getFrameLength(request));
+
+		MbapCodec.encode(frame, 0xABCD, request);
+
+		assertEquals(12, frame.position());
+		assertEquals((short) 0xABCD, frame.getShort(0));
+		assertEquals(0, frame.getShort(2));
+		assertEquals(6, frame.getShort(4));
+		assertEquals(17, frame.get(6));
+		assertEquals(3, frame.get(7));
+		assertEquals(0x0102, frame.getShort(8));
+		assertEquals(10, frame.getShort(10));
+	}
+
+	@Test
+	public void decodesRegisterResponse() throws Exception {
+		byte[] frame = { 17, 3, 4, 0x00, 0x2A, (byte) 0xFF, (byte) 0xFE };
+
+		ModbusResponse response = MbapCodec.decode(7, frame);
+
+		assertTrue(response instanceof ReadMultipleRegistersResponse);
+		assertEquals(7, response.getTransactionID());
+		assertEquals(17, response.getUnitID());
+		ReadMultipleRegistersResponse registers = (ReadMultipleRegistersResponse) response;
+		assertEquals(2, registers.getWordCount());
+		assertEquals(42, registers.getRegisterValue(0));
+		assertEquals(0xFFFE, registers.getRegisterValue(1));
+	}
+
+	@Test
+	public void decodesExceptionResponse() throws Exception {
+		byte[] frame = { 17, (byte) 0x83, 2 };
+		try {
+			MbapCodec.decode(7, frame);
+			fail("an exception response must fail");
+		} catch (ModbusSlaveException e) {
+			assertEquals(ModbusExceptionCode.ILLEGAL_DATA_ADDRESS.getCode(), e.getType());
+		}
+	}
+
+	@Test(expected = ModbusIOException.class)
+	public void rejectsFrameWithoutFunctionCode() throws Exception {
+		MbapCodec.decode(7, new byte[] { 17 });
+	}
+
+	@Test
+	public void acceptsHeadersWithinFrameLimit() {
+		assertTrue(MbapCodec.isValidHeader(0, 2));
+		assertTrue(MbapCodec.isValidHeader(0, MbapCodec.MAX_FRAME_LENGTH - MbapCodec.HEADER_LENGTH));
+	}
+
+	@Test
+	public void rejectsHeadersOutOfBounds() {
+		assertFalse(MbapCodec.isValidHeader(0, 0));
+		assertFalse(MbapCodec.isValidHeader(0, 1));
+		assertFalse(MbapCodec.isValidHeader(0, MbapCodec.MAX_FRAME_LENGTH - MbapCodec.HEADER_LENGTH + 1));
+		assertFalse(MbapCodec.isValidHeader(0, 0xFFFF));
+	}
+
+	@Test
+	public void rejectsOtherProtocols() {
+		assertFalse(MbapCodec.isValidHeader(1, 6));
+		assertFalse(MbapCodec.isValidHeader(0xFFFF, 6));
+	}
+}
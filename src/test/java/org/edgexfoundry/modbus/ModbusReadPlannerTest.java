@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2016-2017 Dell Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * @microservice:  device-modbus
+ * @author: Anantha Boyapalle, Dell
+ * @version: 1.0.0
+ *******************************************************************************/
+package org.edgexfoundry.modbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.edgexfoundry.domain.ModbusDevice;
+import org.edgexfoundry.domain.ModbusResourcePlan;
+import org.edgexfoundry.domain.ModbusValueType;
+import org.edgexfoundry.domain.PrimaryTable;
+import org.edgexfoundry.exception.IllegalRangeSkippedException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ModbusReadPlannerTest {
+
+	private static final String DEVICE = "meter";
+
+	private ModbusReadPlanner planner;
+	private IllegalRangeCache illegalRanges;
+	private ModbusDevice device;
+
+	@Before
+	public void setUp() {
+		illegalRanges = new IllegalRangeCache();
+		ReflectionTestUtils.setField(illegalRanges, "enabled", true);
+		ReflectionTestUtils.setField(illegalRanges, "ttl", 60000L);
+		ReflectionTestUtils.setField(illegalRanges, "maxPerDevice", 64);
+		planner = new ModbusReadPlanner();
+		ReflectionTestUtils.setField(planner, "gapTolerance", 4);
+		ReflectionTestUtils.setField(planner, "illegalRanges", illegalRanges);
+		device = mock(ModbusDevice.class);
+		when(device.getName()).thenReturn(DEVICE);
+	}
+
+	@Test
+	public void mergesResourcesWithinTheGap() {
+		ModbusResourcePlan first = register(0, ModbusValueType.INT16);
+		ModbusResourcePlan second = register(5, ModbusValueType.FLOAT32);
+
+		List<ReadBlock> blocks = planner.plan(Arrays.asList(second, first), device);
+
+		assertEquals(1, blocks.size());
+		assertEquals(0, blocks.get(0).getStartingAddress());
+		assertEquals(7, blocks.get(0).getQuantity());
+		assertSame(first, blocks.get(0).getSlots().get(0).getResource());
+		assertEquals(5, blocks.get(0).getSlots().get(1).getOffset());
+	}
+
+	@Test
+	public void splitsAtWiderGaps() {
+		List<ReadBlock> blocks = planner.plan(
+				Arrays.asList(register(0, ModbusValueType.INT16), register(6, ModbusValueType.INT16)), device);
+
+		assertEquals(2, blocks.size());
+		assertEquals(6, blocks.get(1).getStartingAddress());
+	}
+
+	@Test
+	public void splitsByTableAndUnit() {
+		ModbusResourcePlan holding = register(0, ModbusValueType.INT16);
+		ModbusResourcePlan input = resource(PrimaryTable.INPUT_REGISTERS, 1, 1, ModbusValueType.INT16);
+		ModbusResourcePlan otherUnit = resource(PrimaryTable.HOLDING_REGISTERS, 2, 1, ModbusValueType.INT16);
+
+		List<ReadBlock> blocks = planner.plan(Arrays.asList(holding, input, otherUnit), device);
+
+		assertEquals(3, blocks.size());
+	}
+
+	@Test
+	public void limitsRegisterBlocksTo125() {
+		List<ModbusResourcePlan> resources = new ArrayList<>();
+		for (int address = 0; address < 130; address++) {
+			resources.add(register(address, ModbusValueType.INT16));
+		}
+
+		List<ReadBlock> blocks = planner.plan(resources, device);
+
+		assertEquals(2, blocks.size());
+		assertEquals(ModbusReadPlanner.MAX_READ_REGISTERS, blocks.get(0).getQuantity());
+		assertEquals(125, blocks.get(1).getStartingAddress());
+		assertEquals(5, blocks.get(1).getQuantity());
+	}
+
+	@Test
+	public void keepsAValueWhole() {
+		List<ModbusResourcePlan> resources = new ArrayList<>();
+		for (int address = 0; address < 124; address++) {
+			resources.add(register(address, ModbusValueType.INT16));
+		}
+		resources.add(register(124, ModbusValueType.FLOAT32));
+
+		List<ReadBlock> blocks = planner.plan(resources, device);
+
+		assertEquals(2, blocks.size());
+		assertEquals(124, blocks.get(0).getQuantity());
+		assertEquals(124, blocks.get(1).getStartingAddress());
+		assertEquals(2, blocks.get(1).getQuantity());
+	}
+
+	@Test
+	public void limitsBitBlocksTo2000() {
+		List<ModbusResourcePlan> resources = new ArrayList<>();
+		for (int address = 0; address < 2001; address++) {
+			resources.add(resource(PrimaryTable.COILS, 1, address, ModbusValueType.BOOLEAN));
+		}
+
+		List<ReadBlock> blocks = planner.plan(resources, device);
+
+		assertEquals(2, blocks.size());
+		assertEquals(ModbusReadPlanner.MAX_READ_BITS, blocks.get(0).getQuantity());
+		assertEquals(2000, blocks.get(1).getStartingAddress());
+	}
+
+	@Test
+	public void splitsAroundRefusedRanges() {
+		illegalRanges.record(DEVICE, 1, 3, 2, 2, ModbusExceptionCode.ILLEGAL_DATA_ADDRESS);
+		ModbusResourcePlan before = register(0, ModbusValueType.INT16);
+		ModbusResourcePlan refused = register(2, ModbusValueType.INT16);
+		ModbusResourcePlan after = register(4, ModbusValueType.INT16);
+
+		List<ReadBlock> blocks = planner.plan(Arrays.asList(before, refused, after), device);
+
+		assertEquals(2, blocks.size());
+		assertSame(before, blocks.get(0).getSlots().get(0).getResource());
+		assertEquals(1, blocks.get(0).getSlots().size());
+		assertSame(after, blocks.get(1).getSlots().get(0).getResource());
+	}
+
+	@Test
+	public void failsWhenEveryResourceWasRefused() {
+		illegalRanges.record(DEVICE, 1, 3, 0, 10, ModbusExceptionCode.ILLEGAL_DATA_ADDRESS);
+		try {
+			planner.plan(Arrays.asList(register(0, ModbusValueType.INT16), register(4, ModbusValueType.INT16)),
+					device);
+			fail("a read of refused resources only must fail");
+		} catch (IllegalRangeSkippedException e) {
+			assertEquals(ModbusExceptionCode.ILLEGAL_DATA_ADDRESS.getCode(), e.getCode());
+		}
+	}
+
+	private ModbusResourcePlan register(int address, ModbusValueType valueType) {
+		return resource(PrimaryTable.HOLDING_REGISTERS, 1, address, valueType);
+	}
+
+	private ModbusResourcePlan resource(PrimaryTable primaryTable, int unitId, int address,
+			ModbusValueType valueType) {
+		ModbusResourcePlan resource = mock(ModbusResourcePlan.class);
+		when(resource.getName()).thenReturn(primaryTable + "@" + unitId + ":" + address);
+		when(resource.getDeviceName()).thenReturn(DEVICE);
+		when(resource.getPrimaryTable()).thenReturn(primaryTable);
+		when(resource.getUnitId()).thenReturn(unitId);
+		when(resource.getAddress()).thenReturn(address);
+		when(resource.getValueType()).thenReturn(valueType);
+		return resource;
+	}
+}